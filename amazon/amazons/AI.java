@@ -1,6 +1,15 @@
 package amazons;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static amazons.Piece.*;
 
@@ -11,9 +20,12 @@ class AI extends Player {
 
     /** A position magnitude indicating a win (for white if positive, black
      *  if negative). */
-    private static final int WINNING_VALUE = Integer.MAX_VALUE - 1;
+    static final int WINNING_VALUE = Integer.MAX_VALUE - 1;
     /** A magnitude greater than a normal value. */
-    private static final int INFTY = Integer.MAX_VALUE;
+    static final int INFTY = Integer.MAX_VALUE;
+
+    /** Default memory budget for the transposition table, in bytes. */
+    static final long DEFAULT_HASH_SIZE = 1 << 24;
 
     /** A new AI with no piece or controller (intended to produce
      *  a template). */
@@ -33,104 +45,472 @@ class AI extends Player {
 
     @Override
     String myMove() {
-        Move move = findMove();
+        int packed = 0;
+        if (_ponder != null) {
+            String command = finishPondering();
+            if (command != null) {
+                return command;
+            }
+            packed = _found;
+        }
+        setHashSize(_controller.hashSize());
+        setThreads(_controller.threads());
+        setEvaluator(_controller.evaluator());
+        if (packed == 0) {
+            packed = bookMove(_controller.book(), board());
+        }
+        if (packed == 0) {
+            long budget = _controller.timeBudget();
+            int limit =
+                budget > 0 ? TranspositionTable.MAX_DEPTH : maxDepth(board());
+            Board position = new Board(board());
+            _stop.set(false);
+            String command =
+                await(THINKER.submit(() -> findMove(position, limit, budget)),
+                      0);
+            if (command != null) {
+                return command;
+            }
+            packed = _found;
+        }
+        Move move = Move.mv(packed);
         _controller.reportMove(move);
+        if (_controller.ponder()) {
+            startPondering(packed);
+        }
         return move.toString();
     }
 
-    /** Return a move for me from the current position, assuming there
-     *  is a move. */
-    private Move findMove() {
-        Board b = new Board(board());
-        if (_myPiece == WHITE) {
-            findMove(b, maxDepth(b), true, 1, -INFTY, INFTY);
-        } else {
-            findMove(b, maxDepth(b), true, -1, -INFTY, INFTY);
-        }
-        return _lastFoundMove;
-    }
-
-    /** The move found by the last call to one of the ...FindMove methods
-     *  below. */
-    private Move _lastFoundMove;
-
-    /** Find a move from position BOARD and return its value, recording
-     *  the move found in _lastFoundMove iff SAVEMOVE. The move
-     *  should have maximal value or have value > BETA if SENSE==1,
-     *  and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     *  DEPTH levels.  Searching at level 0 simply returns a static estimate
-     *  of the board value and does not set _lastMoveFound. */
-    private int findMove(Board board, int depth, boolean saveMove,
-                         int sense, int alpha, int beta) {
-        if (depth == 0 || board.winner() != null) {
-            return staticScore(board);
-        }
-        if (sense == 1) {
-            Iterator<Move> white = board.legalMoves(WHITE);
-            int bestVal = Integer.MIN_VALUE;
-            while (white.hasNext()) {
-                Move next = white.next();
-                board.makeMove(next);
-                int responseMove = findMove(board,
-                        depth - 1,
-                        false, -1,
-                        alpha, beta);
-                board.undo();
-                if (responseMove >= bestVal) {
-                    bestVal = responseMove;
-                    if (saveMove) {
-                        _lastFoundMove = next;
-                    }
-                    alpha = Math.max(alpha, responseMove);
-                    if (beta <= alpha) {
-                        break;
+    @Override
+    void stopThinking() {
+        if (_ponder != null) {
+            cancel();
+            waitFor(_ponder);
+            _ponder = null;
+        }
+    }
+
+    @Override
+    String stats() {
+        if (_table == null) {
+            return null;
+        }
+        return String.format("last search: depth %d, %d nodes, %d ms, "
+                             + "%d threads, %s evaluation; ponder: %d hits, "
+                             + "%d misses; %s",
+                             _lastDepth, _nodes, _lastTime, _threads,
+                             _evaluator, _ponderHits, _ponderMisses,
+                             _table);
+    }
+
+    /** Use a transposition table of at most BYTES bytes, discarding the
+     *  current one if it has a different budget. */
+    void setHashSize(long bytes) {
+        if (_table == null || _tableBudget != bytes) {
+            _table = new TranspositionTable(bytes);
+            _tableBudget = bytes;
+            _searchers = null;
+        }
+    }
+
+    /** Search with THREADS threads at once. */
+    void setThreads(int threads) {
+        if (threads != _threads) {
+            _threads = threads;
+            _searchers = null;
+            if (_pool != null) {
+                _pool.shutdown();
+                _pool = null;
+            }
+        }
+    }
+
+    /** Value positions at the search horizon with (copies of)
+     *  EVALUATOR. */
+    void setEvaluator(Evaluator evaluator) {
+        if (evaluator != _evaluator) {
+            _evaluator = evaluator;
+            _searchers = null;
+        }
+    }
+
+    /** Order moves by the hash move, killer moves, and history counts,
+     *  and use principal-variation search, iff ON (the default).  With
+     *  ON false, only the hash move is tried first; this is intended
+     *  for measuring the effect of move ordering. */
+    void setOrdering(boolean on) {
+        _ordering = on;
+    }
+
+    /** Generate the spear throws for each queen move only when the
+     *  search reaches that queen move iff ON (the default); otherwise,
+     *  generate all moves at each position at once. */
+    void setSplit(boolean on) {
+        _split = on;
+    }
+
+    /** Return the number of positions visited in finding the last
+     *  move. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the depth of the last search completed in finding the
+     *  last move. */
+    int lastDepth() {
+        return _lastDepth;
+    }
+
+    /** Stop the search in progress, if any, as soon as possible.  The
+     *  search returns the best move it has found so far, if any. */
+    void cancel() {
+        _stop.set(true);
+    }
+
+    /** Return true iff I am searching in the background for my reply to
+     *  a predicted move of my opponent's. */
+    boolean pondering() {
+        return _ponder != null;
+    }
+
+    /** Return the move (packed) of my opponent's that my current
+     *  pondering predicts, or 0 if I am not pondering. */
+    int ponderMove() {
+        return _ponder == null ? 0 : _ponderMove;
+    }
+
+    /** Return the number of times the position I pondered came about. */
+    int ponderHits() {
+        return _ponderHits;
+    }
+
+    /** Return the number of times pondering was abandoned because my
+     *  opponent made some other move. */
+    int ponderMisses() {
+        return _ponderMisses;
+    }
+
+    /** Start searching in the background (on THINKER) the position
+     *  expected after my move MOVE (packed) and my opponent's reply that
+     *  my search of MOVE found best (from _table), if there is one and
+     *  the game is not then over.  The search continues until it reaches
+     *  the depth limit for that position (if there is no time budget),
+     *  is cancelled, or my next call to myMove decides what to do with
+     *  it. */
+    private void startPondering(int move) {
+        Board next = new Board(board());
+        next.makeMove(move);
+        if (!next.hasMove(next.turn())) {
+            return;
+        }
+        int reply = TranspositionTable.move(_table.probe(next.hashKey()));
+        if (reply == 0 || !next.isLegal(Move.mv(reply))) {
+            return;
+        }
+        next.makeMove(reply);
+        if (!next.hasMove(next.turn())) {
+            return;
+        }
+        int limit = _controller.timeBudget() > 0
+            ? TranspositionTable.MAX_DEPTH : maxDepth(next);
+        _ponderMove = reply;
+        _ponderKey = next.hashKey();
+        _stop.set(false);
+        _ponder = THINKER.submit(() -> findMove(next, limit, 0));
+    }
+
+    /** Deal with my pondering search on my turn.  If my opponent made
+     *  the predicted move (a "ponder hit"), let the search continue, for
+     *  at most the time budget (if there is one), and set _found to its
+     *  move (or to 0 if it has none yet).  Otherwise, cancel it and set
+     *  _found to 0: the positions it searched stay in _table, where the
+     *  next search may still use them.  As for await, return any command
+     *  that arrives while waiting, and otherwise null. */
+    private String finishPondering() {
+        Future<Integer> search = _ponder;
+        _ponder = null;
+        _found = 0;
+        if (board().hashKey() != _ponderKey) {
+            _ponderMisses += 1;
+            cancel();
+            waitFor(search);
+            return null;
+        }
+        _ponderHits += 1;
+        return await(search, _controller.timeBudget());
+    }
+
+    /** Wait for SEARCH, running on THINKER, to finish, but for at most
+     *  BUDGET milliseconds if BUDGET is positive, after which it is
+     *  cancelled.  If a command arrives first (see
+     *  Controller.awaitCommand), cancel the search and return the
+     *  command.  Otherwise, set _found to the move found and return
+     *  null. */
+    private String await(Future<Integer> search, long budget) {
+        String command = _controller.awaitCommand(search, budget);
+        cancel();
+        int move = waitFor(search);
+        if (command == null) {
+            _found = move;
+        }
+        return command;
+    }
+
+    /** Return the move found by SEARCH, waiting for it to finish. */
+    static int waitFor(Future<Integer> search) {
+        try {
+            return search.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while searching");
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException(excp.getCause());
+        }
+    }
+
+    /** Return a move (packed) from BOOK (which may be null) for the
+     *  side to move on BOARD, chosen at random in proportion to the
+     *  weights of the book's moves, or 0 if the book has none.  Since
+     *  different positions may share a hash key, a book move is checked
+     *  for legality before it is used. */
+    private int bookMove(OpeningBook book, Board board) {
+        if (book == null || board.numMoves() >= book.plies()) {
+            return 0;
+        }
+        int total = book.weight(board.hashKey());
+        if (total == 0) {
+            return 0;
+        }
+        int move = book.move(board.hashKey(), _controller.randInt(total));
+        return board.isLegal(Move.mv(move)) ? move : 0;
+    }
+
+    /** Return a move (packed) for the side to move on BOARD, assuming
+     *  there is a move.  Searches to successively greater depths, up to
+     *  DEPTHLIMIT, until BUDGET milliseconds (if positive) run out or
+     *  the search is cancelled, and returns the move found by the last
+     *  search to complete (0 if none did).  Each search tries first the
+     *  moves found best by the previous one, which _table remembers.
+     *  Reports progress to my controller (if any) after each depth. */
+    int findMove(Board board, int depthLimit, long budget) {
+        if (_table == null) {
+            setHashSize(DEFAULT_HASH_SIZE);
+        }
+        if (_searchers == null) {
+            _searchers = new Searcher[_threads];
+            for (int k = 0; k < _threads; k += 1) {
+                _searchers[k] = new Searcher(_table, _evaluator.create());
+                _searchers[k].setStop(_stop);
+            }
+        }
+        if (_threads > 1 && _pool == null) {
+            _pool = new ForkJoinPool(_threads);
+        }
+        _table.newSearch();
+        _root.copy(board);
+        for (Searcher searcher : _searchers) {
+            searcher.clearNodes();
+            searcher.setOrdering(_ordering);
+            searcher.setSplit(_split);
+            searcher.newSearch();
+        }
+        long start = System.nanoTime();
+        long budgetNanos = budget * NANOS_PER_MILLI;
+        int sense = board.turn() == WHITE ? 1 : -1;
+        long deadline = Long.MAX_VALUE;
+        int best = 0;
+        for (int depth = 1; depth <= depthLimit; depth += 1) {
+            if (!searchRoot(depth, sense, deadline)) {
+                break;
+            }
+            int value = _rootValue;
+            best = _rootMove;
+            _lastDepth = depth;
+            reportProgress(depth, best, System.nanoTime() - start);
+            if (Math.abs(value) == WINNING_VALUE
+                || (budget > 0
+                    && System.nanoTime() - start > budgetNanos / 2)) {
+                break;
+            }
+            if (budget > 0) {
+                deadline = start + budgetNanos;
+            }
+        }
+        _nodes = 0;
+        for (Searcher searcher : _searchers) {
+            _nodes += searcher.nodes();
+        }
+        _lastTime = (System.nanoTime() - start) / NANOS_PER_MILLI;
+        return best;
+    }
+
+    /** Report to my controller, if any, that the search has completed
+     *  depth DEPTH, finding MOVE (packed) best, after ELAPSED
+     *  nanoseconds. */
+    private void reportProgress(int depth, int move, long elapsed) {
+        if (_controller == null) {
+            return;
+        }
+        long nodes = 0;
+        for (Searcher searcher : _searchers) {
+            nodes += searcher.nodes();
+        }
+        long rate = (long) ((double) nodes * NANOS_PER_SEC
+                            / Math.max(elapsed, 1));
+        _controller.reportProgress(myPiece(), depth, Move.mv(move), nodes,
+                                   rate);
+    }
+
+    /** Search the position in _root to depth DEPTH, where SENSE is 1 if
+     *  white is to move and -1 if black is, stopping when
+     *  System.nanoTime() passes DEADLINE.  Sets _rootMove to the best
+     *  move found and _rootValue to its value, and returns true, or
+     *  returns false if the search ran out of time.  With more than one
+     *  thread, the first move (usually the best one from the previous
+     *  search) is searched alone, to establish a good bound, and the
+     *  remaining moves are then shared among all the threads, each of
+     *  which tightens the common bound as it finds better moves (the
+     *  "young brothers wait" scheme). */
+    private boolean searchRoot(int depth, int sense, long deadline) {
+        Searcher main = _searchers[0];
+        Board board = main.board();
+        board.copy(_root);
+        Piece side = sense == 1 ? WHITE : BLACK;
+        int[] moves = main.moveBuffer(side, depth);
+        int numMoves = board.legalMoves(side, moves);
+        if (numMoves == 0) {
+            _rootMove = 0;
+            _rootValue = sense == 1 ? -WINNING_VALUE : WINNING_VALUE;
+            return true;
+        }
+        long entry = _table.probe(board.hashKey());
+        Searcher.putFirst(TranspositionTable.move(entry), moves, numMoves);
+        if (_rootMoves.length < numMoves) {
+            _rootMoves = new int[numMoves];
+        }
+        System.arraycopy(moves, 0, _rootMoves, 0, numMoves);
+
+        _rootValue = sense == 1 ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        _rootMove = _rootMoves[0];
+        _nextRootMove = new AtomicInteger(0);
+        int first = _threads > 1 ? 1 : numMoves;
+        if (!searchRootMoves(main, depth, sense, first, deadline)) {
+            return false;
+        }
+        if (first < numMoves) {
+            _nextRootMove.set(first);
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (Searcher searcher : _searchers) {
+                tasks.add(() -> {
+                    searcher.board().copy(_root);
+                    return searchRootMoves(searcher, depth, sense,
+                                           numMoves, deadline);
+                });
+            }
+            try {
+                for (Future<Boolean> result : _pool.invokeAll(tasks)) {
+                    if (!result.get()) {
+                        return false;
                     }
                 }
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException excp) {
+                throw new IllegalStateException(excp.getCause());
             }
-            return bestVal;
+        }
+        _table.store(_root.hashKey(), depth, TranspositionTable.EXACT,
+                     _rootValue, _rootMove);
+        return true;
+    }
 
-        } else {
-            Iterator<Move> black = board.legalMoves(BLACK);
-            int bestVal = Integer.MAX_VALUE;
-
-            while (black.hasNext()) {
-                Move next = black.next();
-                board.makeMove(next);
-                int responseMove = findMove(board,
-                        depth - 1,
-                        false, 1,
-                        alpha, beta);
-                board.undo();
-                if (responseMove <= bestVal) {
-                    bestVal = responseMove;
-                    if (saveMove) {
-                        _lastFoundMove = next;
+    /** Using SEARCHER, whose board must hold the root position, search
+     *  root moves from _rootMoves to depth DEPTH, taking them in turn
+     *  from _nextRootMove until it reaches LIMIT, and recording in
+     *  _rootValue and _rootMove any that improve on the best found so
+     *  far.  As in Searcher.findMove, a move searched after a best move
+     *  has been found is first tested with a null window.  SENSE and
+     *  DEADLINE are as for searchRoot.  Return false iff the search ran
+     *  out of time. */
+    private boolean searchRootMoves(Searcher searcher, int depth, int sense,
+                                    int limit, long deadline) {
+        Board board = searcher.board();
+        searcher.start(deadline);
+        for (int i = _nextRootMove.getAndIncrement(); i < limit;
+             i = _nextRootMove.getAndIncrement()) {
+            int move = _rootMoves[i];
+            int bound = _rootValue;
+            boolean first =
+                bound == Integer.MIN_VALUE || bound == Integer.MAX_VALUE;
+            board.makeMove(move);
+            int value;
+            if (sense == 1) {
+                bound = Math.max(bound, -INFTY);
+                if (_ordering && !first) {
+                    value = searcher.findMove(depth - 1, -1,
+                                              bound, bound + 1);
+                    if (value > bound && !searcher.aborted()) {
+                        value = searcher.findMove(depth - 1, -1,
+                                                  bound, INFTY);
                     }
-                    beta = Math.min(beta, responseMove);
-                    if (beta <= alpha) {
-                        break;
+                } else {
+                    value = searcher.findMove(depth - 1, -1, bound, INFTY);
+                }
+            } else {
+                bound = Math.min(bound, INFTY);
+                if (_ordering && !first) {
+                    value = searcher.findMove(depth - 1, 1,
+                                              bound - 1, bound);
+                    if (value < bound && !searcher.aborted()) {
+                        value = searcher.findMove(depth - 1, 1,
+                                                  -INFTY, bound);
                     }
+                } else {
+                    value = searcher.findMove(depth - 1, 1, -INFTY, bound);
                 }
             }
-            return bestVal;
+            board.undo();
+            if (searcher.aborted()) {
+                return false;
+            }
+            offerRootMove(move, value, sense);
+        }
+        return true;
+    }
+
+    /** Record MOVE, of value VALUE, as the best root move if it is better
+     *  than the best found so far for the side to move, whose sense is
+     *  SENSE. */
+    private synchronized void offerRootMove(int move, int value, int sense) {
+        if (sense == 1 ? value > _rootValue : value < _rootValue) {
+            _rootValue = value;
+            _rootMove = move;
         }
     }
 
     /** Return a heuristically determined maximum search depth
-     *  based on characteristics of BOARD. */
+     *  based on characteristics of BOARD.  The depth grows as the game
+     *  goes on (measured as on a 10x10 board, so that it scales with the
+     *  board size), and once at most SOLVE_PLIES plies could remain, is
+     *  enough to search to the end of the game and solve it exactly. */
     private int maxDepth(Board board) {
-        int N = board.numMoves();
+        int left = Board.MAX_MOVES - board.numMoves();
+        if (left <= SOLVE_PLIES) {
+            return left;
+        }
+        int N = board.numMoves() * TEN_BY_TEN_MOVES / Board.MAX_MOVES;
         final int A = 30;
         final int B = 38;
         final int C = 44;
         final int D = 50;
         if (N < A) {
             return 1;
-        } else if (N > A && N < B) {
+        } else if (N < B) {
             return 2;
-        } else if (N > B && N < C) {
+        } else if (N < C) {
             return 3;
-        } else if (N > C && N < D) {
+        } else if (N < D) {
             return 4;
         } else {
             return 5;
@@ -138,26 +518,78 @@ class AI extends Player {
 
     }
 
-    /** Return a heuristic value for BOARD. */
-    private int staticScore(Board board) {
-        Piece winner = board.winner();
-        if (winner == BLACK) {
-            return -WINNING_VALUE;
-        } else if (winner == WHITE) {
-            return WINNING_VALUE;
-        }
-        int numMovesW = 0;
-        Iterator<Move> white = board.legalMoves(WHITE);
-        while (white.hasNext()) {
-            white.next();
-            numMovesW++;
-        }
-        int numMovesB = 0;
-        Iterator<Move> black = board.legalMoves(BLACK);
-        while (black.hasNext()) {
-            black.next();
-            numMovesB++;
-        }
-        return numMovesW - numMovesB;
-    }
+    /** Number of plies that may remain in a game (at most) for maxDepth
+     *  to search to its end: the whole game on a 4x4 board. */
+    private static final int SOLVE_PLIES = 10;
+
+    /** The value of Board.MAX_MOVES for a 10x10 board, for which maxDepth
+     *  was tuned. */
+    private static final int TEN_BY_TEN_MOVES = 92;
+
+    /** Nanoseconds per millisecond. */
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /** Nanoseconds per second. */
+    private static final long NANOS_PER_SEC = 1000000000;
+
+    /** Runs searches for myMove (mine and MCTSPlayer's), so that the
+     *  controller's thread can take commands meanwhile.  Its threads are
+     *  daemons, so that they do not keep the program running. */
+    static final ExecutorService THINKER =
+        Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "AI search");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    /** Becomes true when the current search is to be cancelled. */
+    private final AtomicBoolean _stop = new AtomicBoolean();
+    /** The move (packed) found by the last call to await. */
+    private int _found;
+
+    /** My search of the predicted position while my opponent is
+     *  choosing a move, or null if I am not pondering. */
+    private Future<Integer> _ponder;
+    /** The opponent's move (packed) that _ponder predicts. */
+    private int _ponderMove;
+    /** The hash key of the position _ponder is searching. */
+    private long _ponderKey;
+    /** Numbers of ponder hits and misses. */
+    private int _ponderHits, _ponderMisses;
+
+    /** The position being searched. */
+    private final Board _root = new Board();
+    /** The moves from _root, in the order they are searched. */
+    private int[] _rootMoves = new int[0];
+    /** Index in _rootMoves of the next root move to be searched. */
+    private AtomicInteger _nextRootMove;
+    /** The value of the best root move found so far in the current
+     *  search, and the move itself (packed). */
+    private volatile int _rootValue, _rootMove;
+
+    /** Results of previous searches. */
+    private TranspositionTable _table;
+    /** The memory budget (in bytes) with which _table was created. */
+    private long _tableBudget;
+    /** Number of threads that search at once. */
+    private int _threads = 1;
+    /** True iff my Searchers order moves heuristically and use
+     *  principal-variation search. */
+    private boolean _ordering = true;
+    /** True iff my Searchers generate queen moves and spear throws
+     *  separately. */
+    private boolean _split = true;
+    /** Template for the static evaluators used by my Searchers. */
+    private Evaluator _evaluator = new MobilityEvaluator();
+    /** One Searcher for each thread, or null if they must be created. */
+    private Searcher[] _searchers;
+    /** The threads used for searching when _threads > 1. */
+    private ForkJoinPool _pool;
+
+    /** Number of positions visited in finding the last move. */
+    private long _nodes;
+    /** The depth of the last completed search for the last move. */
+    private int _lastDepth;
+    /** The time in milliseconds taken to find the last move. */
+    private long _lastTime;
 }
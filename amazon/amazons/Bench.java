@@ -0,0 +1,717 @@
+package amazons;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+import java.util.regex.Matcher;
+
+import static amazons.Piece.*;
+
+/** Performance measurements for the Amazons engine.  Run as
+ *      java amazons.Bench [NAME [ARG...]]
+ *  where NAME selects one of the benchmarks below (by default, all of
+ *  them) and ARGs are its parameters.  Results are printed on the
+ *  standard output.
+ *  @author Kelley
+ */
+public class Bench {
+
+    /** Run the benchmarks selected by ARGS.  An argument --json=FILE
+     *  (anywhere in ARGS) writes the results of the micro-benchmarks to
+     *  FILE in JSON. */
+    public static void main(String... args) {
+        String json = null;
+        List<String> rest = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--json=")) {
+                json = arg.substring("--json=".length());
+            } else {
+                rest.add(arg);
+            }
+        }
+        args = rest.toArray(new String[0]);
+        String name = args.length == 0 ? "all" : args[0];
+        switch (name) {
+        case "perft":
+        case "makeundo":
+        case "copy":
+        case "reach":
+        case "parse":
+        case "findmove":
+        case "micro":
+            micro(name);
+            break;
+        case "parallel":
+            parallel(intArg(args, 1, Runtime.getRuntime()
+                            .availableProcessors()));
+            break;
+        case "ordering":
+            ordering();
+            break;
+        case "split":
+            split();
+            break;
+        case "mcts":
+            mcts(intArg(args, 1, MCTS_GAMES), intArg(args, 2, MCTS_MILLIS));
+            break;
+        case "mctsparallel":
+            mctsParallel(intArg(args, 1, MCTS_MAX_THREADS));
+            break;
+        case "endgame":
+            endgame();
+            break;
+        case "eval":
+            eval(intArg(args, 1, EVAL_GAMES), intArg(args, 2, EVAL_DEPTH));
+            break;
+        case "book":
+            book(intArg(args, 1, BOOK_GAMES));
+            break;
+        case "all":
+            parallel(Runtime.getRuntime().availableProcessors());
+            ordering();
+            split();
+            eval(EVAL_GAMES, EVAL_DEPTH);
+            mcts(MCTS_GAMES, MCTS_MILLIS);
+            mctsParallel(MCTS_MAX_THREADS);
+            endgame();
+            book(BOOK_GAMES);
+            micro("micro");
+            break;
+        default:
+            System.err.printf("Unknown benchmark: %s%n", name);
+            System.exit(1);
+        }
+        if (json != null) {
+            try {
+                HARNESS.writeJson(json);
+            } catch (IOException excp) {
+                System.err.printf("Could not write %s: %s%n", json,
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        }
+    }
+
+    /** Return ARGS[K] as an integer, or DEFAULT if there is no ARGS[K]. */
+    private static int intArg(String[] args, int k, int dflt) {
+        return k < args.length ? Integer.parseInt(args[k]) : dflt;
+    }
+
+    /** Return a position reached from the initial position by MOVES
+     *  random legal moves, chosen using a generator seeded with SEED.
+     *  Stops early if the game ends. */
+    static Board position(int moves, long seed) {
+        Random rand = new Random(seed);
+        Board board = new Board();
+        int[] buffer = new int[board.moveLimit(WHITE)];
+        for (int k = 0; k < moves; k += 1) {
+            int n = board.legalMoves(board.turn(), buffer);
+            if (n == 0) {
+                break;
+            }
+            board.makeMove(buffer[rand.nextInt(n)]);
+        }
+        return board;
+    }
+
+    /** Return the number of positions reached by all sequences of DEPTH
+     *  legal moves from BOARD, which is unchanged on return.  DEPTH must
+     *  be positive.  Moves at the last ply are counted, not made. */
+    static long perft(Board board, int depth) {
+        if (depth == 1) {
+            return board.countMoves(board.turn());
+        }
+        int[] moves = new int[board.moveLimit(board.turn())];
+        int n = board.legalMoves(board.turn(), moves);
+        long total = 0;
+        for (int k = 0; k < n; k += 1) {
+            board.makeMove(moves[k]);
+            total += perft(board, depth - 1);
+            board.undo();
+        }
+        return total;
+    }
+
+    /** Return the fixed positions used for timing searches.  Each is
+     *  paired with the depth to which it is searched. */
+    static List<Object[]> searchPositions() {
+        List<Object[]> result = new ArrayList<>();
+        for (int[] spec : SEARCH_POSITIONS) {
+            result.add(new Object[] { position(spec[0], SEED), spec[1] });
+        }
+        return result;
+    }
+
+    /** Time searches of the fixed positions to fixed depths with 1, 2,
+     *  4, ... up to MAXTHREADS threads, reporting the time to reach the
+     *  depth, nodes per second, and speedup over one thread. */
+    static void parallel(int maxThreads) {
+        System.out.printf("%-8s %5s %7s %10s %12s %10s %8s%n",
+                          "position", "depth", "threads", "time (ms)",
+                          "nodes", "knodes/s", "speedup");
+        List<Object[]> positions = searchPositions();
+        new AI().findMove((Board) positions.get(0)[0], 2, 0);
+        for (Object[] spec : positions) {
+            Board board = (Board) spec[0];
+            int depth = (Integer) spec[1];
+            double base = 0;
+            for (int threads = 1; threads <= maxThreads;
+                 threads = threads == maxThreads ? threads + 1
+                     : Math.min(2 * threads, maxThreads)) {
+                AI ai = new AI();
+                ai.setThreads(threads);
+                long start = System.nanoTime();
+                ai.findMove(board, depth, 0);
+                double millis = (System.nanoTime() - start) / NANOS_PER_MS;
+                if (threads == 1) {
+                    base = millis;
+                }
+                System.out.printf("%-8s %5d %7d %10.1f %12d %10.1f %8.2f%n",
+                                  "move" + board.numMoves(), depth, threads,
+                                  millis, ai.nodes(), ai.nodes() / millis,
+                                  base / millis);
+            }
+        }
+    }
+
+    /** Search the fixed positions to fixed depths with move ordering and
+     *  principal-variation search off and on, reporting the nodes
+     *  searched and the time taken. */
+    static void ordering() {
+        System.out.printf("%-8s %5s %12s %10s %12s %10s %8s%n",
+                          "position", "depth", "nodes (off)", "ms (off)",
+                          "nodes (on)", "ms (on)", "ratio");
+        List<Object[]> positions = searchPositions();
+        new AI().findMove((Board) positions.get(0)[0], 2, 0);
+        long totalOff, totalOn;
+        totalOff = totalOn = 0;
+        for (Object[] spec : positions) {
+            Board board = (Board) spec[0];
+            int depth = (Integer) spec[1];
+            long[] nodes = new long[2];
+            double[] millis = new double[2];
+            for (int k = 0; k < 2; k += 1) {
+                AI ai = new AI();
+                ai.setOrdering(k == 1);
+                long start = System.nanoTime();
+                ai.findMove(board, depth, 0);
+                millis[k] = (System.nanoTime() - start) / NANOS_PER_MS;
+                nodes[k] = ai.nodes();
+            }
+            totalOff += nodes[0];
+            totalOn += nodes[1];
+            System.out.printf("%-8s %5d %12d %10.1f %12d %10.1f %8.2f%n",
+                              "move" + board.numMoves(), depth, nodes[0],
+                              millis[0], nodes[1], millis[1],
+                              (double) nodes[0] / nodes[1]);
+        }
+        System.out.printf("%-14s %12d %10s %12d %10s %8.2f%n", "total",
+                          totalOff, "", totalOn, "",
+                          (double) totalOff / totalOn);
+    }
+
+    /** Search the fixed positions to fixed depths generating all moves
+     *  at once and in two stages (queen moves, then spear throws),
+     *  reporting the nodes searched and the time taken. */
+    static void split() {
+        System.out.printf("%-8s %5s %12s %10s %12s %10s %8s%n",
+                          "position", "depth", "nodes (flat)", "ms (flat)",
+                          "nodes (split)", "ms (split)", "speedup");
+        List<Object[]> positions = searchPositions();
+        new AI().findMove((Board) positions.get(0)[0], 2, 0);
+        double totalFlat, totalSplit;
+        totalFlat = totalSplit = 0;
+        for (Object[] spec : positions) {
+            Board board = (Board) spec[0];
+            int depth = (Integer) spec[1];
+            long[] nodes = new long[2];
+            double[] millis = new double[2];
+            for (int k = 0; k < 2; k += 1) {
+                AI ai = new AI();
+                ai.setSplit(k == 1);
+                long start = System.nanoTime();
+                ai.findMove(board, depth, 0);
+                millis[k] = (System.nanoTime() - start) / NANOS_PER_MS;
+                nodes[k] = ai.nodes();
+            }
+            totalFlat += millis[0];
+            totalSplit += millis[1];
+            System.out.printf("%-8s %5d %12d %10.1f %12d %10.1f %8.2f%n",
+                              "move" + board.numMoves(), depth, nodes[0],
+                              millis[0], nodes[1], millis[1],
+                              millis[0] / millis[1]);
+        }
+        System.out.printf("%-14s %12s %10.1f %12s %10.1f %8.2f%n", "total",
+                          "", totalFlat, "", totalSplit,
+                          totalFlat / totalSplit);
+    }
+
+    /** Compare the evaluators: report evaluations per second for each on
+     *  the fixed positions, and play GAMES games between a territory AI
+     *  and a mobility AI, each searching to depth DEPTH, alternating
+     *  colors and starting from different random openings. */
+    static void eval(int games, int depth) {
+        Evaluator[] evaluators = {
+            new MobilityEvaluator(), new TerritoryEvaluator()
+        };
+        List<Object[]> positions = searchPositions();
+        System.out.printf("%-10s %12s%n", "evaluator", "evals/s");
+        for (Evaluator eval : evaluators) {
+            int sink = 0;
+            for (int k = 0; k < EVAL_WARMUP; k += 1) {
+                for (Object[] spec : positions) {
+                    sink += eval.score((Board) spec[0]);
+                }
+            }
+            int n = 0;
+            long start = System.nanoTime();
+            while (System.nanoTime() - start < EVAL_NANOS) {
+                for (Object[] spec : positions) {
+                    sink += eval.score((Board) spec[0]);
+                    n += 1;
+                }
+            }
+            double secs = (System.nanoTime() - start) / NANOS_PER_SEC;
+            _sink = sink;
+            System.out.printf("%-10s %12.0f%n", eval, n / secs);
+        }
+
+        int wins = 0;
+        for (int g = 0; g < games; g += 1) {
+            AI territory = new AI(), mobility = new AI();
+            territory.setEvaluator(new TerritoryEvaluator());
+            Board start = position(OPENING_MOVES, SEED + g / 2);
+            Piece territorySide = g % 2 == 0 ? WHITE : BLACK;
+            AI white = territorySide == WHITE ? territory : mobility;
+            AI black = territorySide == WHITE ? mobility : territory;
+            if (play(start, b -> white.findMove(b, depth, 0),
+                     b -> black.findMove(b, depth, 0)) == territorySide) {
+                wins += 1;
+            }
+        }
+        System.out.printf("territory vs. mobility at depth %d: "
+                          + "%d wins in %d games%n", depth, wins, games);
+    }
+
+    /** Play out the game from BOARD (which is modified) between WHITE
+     *  and BLACK, which return their moves (packed) for a given board,
+     *  and return the winner: the first side to be left without a legal
+     *  move loses. */
+    static Piece play(Board board, ToIntFunction<Board> white,
+                      ToIntFunction<Board> black) {
+        while (true) {
+            Piece side = board.turn();
+            if (!board.hasMove(side)) {
+                return side.opponent();
+            }
+            ToIntFunction<Board> player = side == WHITE ? white : black;
+            board.makeMove(player.applyAsInt(board));
+        }
+    }
+
+    /** Measure the Monte Carlo player: report playouts per second from
+     *  the fixed positions, and play GAMES games against the AI, each
+     *  side allowed MILLIS milliseconds per move, alternating colors and
+     *  starting from different random openings. */
+    static void mcts(int games, long millis) {
+        System.out.printf("%-8s %10s %12s%n", "position", "playouts",
+                          "playouts/s");
+        for (Object[] spec : searchPositions()) {
+            Board board = (Board) spec[0];
+            MCTSPlayer player = new MCTSPlayer();
+            player.setSeed(SEED);
+            long start = System.nanoTime();
+            player.findMove(board, 0, MCTS_BENCH_MILLIS);
+            double secs = (System.nanoTime() - start) / NANOS_PER_SEC;
+            System.out.printf("%-8s %10d %12.0f%n", "move" + board.numMoves(),
+                              player.playouts(), player.playouts() / secs);
+        }
+
+        int wins = 0;
+        for (int g = 0; g < games; g += 1) {
+            MCTSPlayer mcts = new MCTSPlayer();
+            mcts.setSeed(SEED + g);
+            AI ai = new AI();
+            Board start = position(OPENING_MOVES, SEED + g / 2);
+            Piece mctsSide = g % 2 == 0 ? WHITE : BLACK;
+            ToIntFunction<Board> mctsMove = b -> mcts.findMove(b, 0, millis),
+                aiMove = b -> ai.findMove(b, TranspositionTable.MAX_DEPTH,
+                                          millis);
+            Piece winner = mctsSide == WHITE ? play(start, mctsMove, aiMove)
+                : play(start, aiMove, mctsMove);
+            if (winner == mctsSide) {
+                wins += 1;
+            }
+        }
+        System.out.printf("mcts vs. ai at %d ms per move: %d wins in %d "
+                          + "games%n", millis, wins, games);
+    }
+
+    /** Measure the throughput of the Monte Carlo player on the initial
+     *  position and the fixed positions with 1, 2, 4, ... up to
+     *  MAXTHREADS threads, reporting playouts per second and speedup
+     *  over one thread. */
+    static void mctsParallel(int maxThreads) {
+        System.out.printf("%-8s %7s %10s %12s %8s%n", "position",
+                          "threads", "playouts", "playouts/s", "speedup");
+        List<Board> positions = new ArrayList<>();
+        positions.add(new Board());
+        for (Object[] spec : searchPositions()) {
+            positions.add((Board) spec[0]);
+        }
+        new MCTSPlayer().findMove(positions.get(0), 0, MCTS_BENCH_MILLIS);
+        for (Board board : positions) {
+            double base = 0;
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                MCTSPlayer player = new MCTSPlayer();
+                player.setSeed(SEED);
+                player.setThreads(threads);
+                long start = System.nanoTime();
+                player.findMove(board, 0, MCTS_BENCH_MILLIS);
+                double rate = player.playouts()
+                    / ((System.nanoTime() - start) / NANOS_PER_SEC);
+                player.setThreads(1);
+                if (threads == 1) {
+                    base = rate;
+                }
+                System.out.printf("%-8s %7d %10d %12.0f %8.2f%n",
+                                  "move" + board.numMoves(), threads,
+                                  player.playouts(), rate, rate / base);
+            }
+        }
+    }
+
+    /** Time Endgame on late positions from random games, reporting the
+     *  outcome it finds, the time for its first call on each position,
+     *  when it must solve the regions' shapes, and for later calls,
+     *  when their results are remembered. */
+    static void endgame() {
+        System.out.printf("%-8s %6s %8s %12s %12s%n", "position", "seed",
+                          "winner", "first (us)", "later (us)");
+        for (int moves : ENDGAME_MOVES) {
+            for (long seed = SEED; seed < SEED + ENDGAME_SEEDS; seed += 1) {
+                Board board = position(moves, seed);
+                Endgame endgame = new Endgame();
+                long start = System.nanoTime();
+                Piece winner = endgame.winner(board);
+                double first = (System.nanoTime() - start) / NANOS_PER_US;
+                start = System.nanoTime();
+                for (int k = 0; k < ENDGAME_REPEATS; k += 1) {
+                    endgame.winner(board);
+                }
+                double later = (System.nanoTime() - start) / NANOS_PER_US
+                    / ENDGAME_REPEATS;
+                System.out.printf("%-8s %6d %8s %12.1f %12.2f%n",
+                                  "move" + board.numMoves(), seed,
+                                  winner == null ? "-" : winner.toName(),
+                                  first, later);
+            }
+        }
+    }
+
+    /** Build an opening book from a log of GAMES random games, and time
+     *  lookups in it of positions that it holds and of positions that
+     *  it does not. */
+    static void book(int games) {
+        try {
+            File log = File.createTempFile("amazons", ".log");
+            File bookFile = File.createTempFile("amazons", ".book");
+            log.deleteOnExit();
+            bookFile.deleteOnExit();
+            Random rand = new Random(SEED);
+            List<Long> keys = new ArrayList<>();
+            try (PrintStream out = new PrintStream(log)) {
+                Board board = new Board();
+                int[] buffer = new int[board.moveLimit(WHITE)];
+                for (int g = 0; g < games; g += 1) {
+                    board.init();
+                    while (true) {
+                        int n = board.legalMoves(board.turn(), buffer);
+                        if (n == 0) {
+                            break;
+                        }
+                        if (board.numMoves() < BookBuilder.DEFAULT_PLIES) {
+                            keys.add(board.hashKey());
+                        }
+                        int move = buffer[rand.nextInt(n)];
+                        out.println(Move.toString(move));
+                        board.makeMove(move);
+                    }
+                    out.println("new");
+                }
+            }
+            long start = System.nanoTime();
+            BookBuilder builder = new BookBuilder(BookBuilder.DEFAULT_PLIES);
+            try (BufferedReader in =
+                 new BufferedReader(new FileReader(log))) {
+                builder.add(in);
+            }
+            builder.write(bookFile.getPath());
+            double buildTime = (System.nanoTime() - start) / NANOS_PER_MS;
+            OpeningBook book = OpeningBook.open(bookFile.getPath());
+            System.out.printf("%d games, %d records, %d bytes, "
+                              + "built in %.0f ms%n", builder.games(),
+                              book.size(), bookFile.length(), buildTime);
+            long[] present = new long[keys.size()];
+            long[] absent = new long[keys.size()];
+            for (int k = 0; k < present.length; k += 1) {
+                present[k] = keys.get(k);
+                absent[k] = rand.nextLong();
+            }
+            System.out.printf("%-8s %12s%n", "keys", "lookup (us)");
+            for (int rep = 0; rep < 2; rep += 1) {
+                System.out.printf("%-8s %12.3f%n", "present",
+                                  lookups(book, present));
+                System.out.printf("%-8s %12.3f%n", "absent",
+                                  lookups(book, absent));
+            }
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+    }
+
+    /** Return the average time in microseconds to look up the moves for
+     *  each of KEYS in BOOK, looking each up BOOK_REPEATS times. */
+    private static double lookups(OpeningBook book, long[] keys) {
+        int total = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < BOOK_REPEATS; r += 1) {
+            for (long key : keys) {
+                total += book.bestMove(key);
+            }
+        }
+        double time = (System.nanoTime() - start) / NANOS_PER_US
+            / BOOK_REPEATS / keys.length;
+        _sink = total;
+        return time;
+    }
+
+    /** Run the micro-benchmark NAME ("perft", "makeundo", "copy", "reach",
+     *  "parse", or "findmove"), or all of them if NAME is "micro", with
+     *  HARNESS.  These measure the basic operations of the engine: move
+     *  generation (perft, counting leaf positions per second), making and
+     *  undoing moves (each legal move from one position, and a whole game
+     *  played forward and back), copying boards, enumerating the squares
+     *  reachable from each square with reachableFrom and checking each legal
+     *  move with isLegal, parsing moves in both formats (with Move.parse, with
+     *  MOVE_PATTERN as Move once did, and into Moves with Move.mv), and the
+     *  time for a complete search of each of the fixed positions. */
+    static void micro(String name) {
+        boolean all = name.equals("micro");
+        HARNESS.printHeading();
+        if (all || name.equals("perft")) {
+            for (int[] spec : PERFT_POSITIONS) {
+                Board board = position(spec[0], SEED);
+                HARNESS.throughput("perft", String.format("move%d/%d",
+                                                           spec[0], spec[1]),
+                                   () -> perft(board, spec[1]));
+            }
+        }
+        Board board = position(MICRO_MOVES, SEED);
+        int[] moves = new int[board.moveLimit(board.turn())];
+        int numMoves = board.legalMoves(board.turn(), moves);
+        if (all || name.equals("makeundo")) {
+            HARNESS.throughput("makeundo", "move" + MICRO_MOVES, () -> {
+                for (int k = 0; k < numMoves; k += 1) {
+                    board.makeMove(moves[k]);
+                    board.undo();
+                }
+                return numMoves;
+            });
+            Board game = position(Board.MAX_MOVES, SEED);
+            int plies = game.numMoves();
+            int[] line = new int[plies];
+            for (int k = 0; k < plies; k += 1) {
+                line[k] = game.move(k);
+            }
+            game.init();
+            HARNESS.throughput("makeundo", "game" + plies, () -> {
+                for (int k = 0; k < plies; k += 1) {
+                    game.makeMove(line[k]);
+                }
+                for (int k = 0; k < plies; k += 1) {
+                    game.undo();
+                }
+                return plies;
+            });
+        }
+        if (all || name.equals("copy")) {
+            Board copy = new Board();
+            HARNESS.throughput("copy", "move" + MICRO_MOVES, () -> {
+                for (int k = 0; k < MICRO_REPEATS; k += 1) {
+                    copy.copy(board);
+                }
+                return MICRO_REPEATS;
+            });
+        }
+        if (all || name.equals("reach")) {
+            HARNESS.throughput("reach", "move" + MICRO_MOVES, () -> {
+                int total = 0;
+                for (int k = 0; k < BitBoard.SQUARES; k += 1) {
+                    Iterator<Square> squares =
+                        board.reachableFrom(Square.sq(k), null);
+                    while (squares.hasNext()) {
+                        total += squares.next().index();
+                    }
+                }
+                _sink = total;
+                return BitBoard.SQUARES;
+            });
+            Move[] legal = new Move[numMoves];
+            for (int k = 0; k < numMoves; k += 1) {
+                legal[k] = Move.mv(moves[k]);
+            }
+            HARNESS.throughput("islegal", "move" + MICRO_MOVES, () -> {
+                int total = 0;
+                for (Move move : legal) {
+                    total += board.isLegal(move) ? 1 : 0;
+                }
+                _sink = total;
+                return legal.length;
+            });
+        }
+        if (all || name.equals("parse")) {
+            String[] texts = new String[2 * numMoves];
+            for (int k = 0; k < numMoves; k += 1) {
+                texts[2 * k] = Move.toString(moves[k]);
+                texts[2 * k + 1] = texts[2 * k].replaceAll("[-()]+", " ")
+                    .trim();
+            }
+            HARNESS.throughput("parse", "move" + MICRO_MOVES, () -> {
+                int total = 0;
+                for (String text : texts) {
+                    total += Move.parse(text);
+                }
+                _sink = total;
+                return texts.length;
+            });
+            HARNESS.throughput("parseregex", "move" + MICRO_MOVES, () -> {
+                int total = 0;
+                for (String text : texts) {
+                    total += regexParse(text);
+                }
+                _sink = total;
+                return texts.length;
+            });
+            HARNESS.throughput("mv", "move" + MICRO_MOVES, () -> {
+                int total = 0;
+                for (String text : texts) {
+                    total += Move.mv(text).packed();
+                }
+                _sink = total;
+                return texts.length;
+            });
+        }
+        if (all || name.equals("findmove")) {
+            for (Object[] spec : searchPositions()) {
+                Board position = (Board) spec[0];
+                int depth = (Integer) spec[1];
+                HARNESS.averageTime("findmove",
+                                    String.format("move%d/%d",
+                                                  position.numMoves(),
+                                                  depth), () -> {
+                        _sink = new AI().findMove(position, depth, 0);
+                        return 1;
+                    });
+            }
+        }
+    }
+
+    /** Return the move denoted by TEXT, packed, or Move.NOT_A_MOVE if
+     *  TEXT does not match Move.MOVE_PATTERN, as Move.parse does, but
+     *  using the pattern.  This is how moves were parsed before Move.parse
+     *  was written, except that each call here has its own Matcher, as
+     *  concurrent use requires. */
+    private static int regexParse(String text) {
+        Matcher mat = Move.MOVE_PATTERN.matcher(text);
+        if (!mat.matches()) {
+            return Move.NOT_A_MOVE;
+        }
+        int k = mat.group(1) != null ? 1 : 4;
+        return Move.pack(Square.sq(mat.group(k)).index(),
+                         Square.sq(mat.group(k + 1)).index(),
+                         Square.sq(mat.group(k + 2)).index());
+    }
+
+    /** Seed for the random moves that produce the test positions. */
+    private static final long SEED = 61;
+
+    /** The fixed positions for timing searches, as pairs of (number of
+     *  random moves from the initial position, search depth). */
+    private static final int[][] SEARCH_POSITIONS = {
+        { 10, 2 }, { 20, 2 }, { 30, 3 }, { 40, 3 },
+    };
+
+    /** Default number of games and search depth for the evaluator
+     *  match. */
+    private static final int EVAL_GAMES = 10, EVAL_DEPTH = 2;
+
+    /** Default number of games, and time per move in milliseconds, for
+     *  the match between the Monte Carlo player and the AI. */
+    private static final int MCTS_GAMES = 4, MCTS_MILLIS = 200;
+
+    /** Default greatest number of threads for measuring Monte Carlo
+     *  throughput. */
+    private static final int MCTS_MAX_THREADS = 16;
+
+    /** Time in milliseconds for measuring playouts per second. */
+    private static final long MCTS_BENCH_MILLIS = 2000;
+
+    /** Number of random moves in the openings of the evaluator and
+     *  Monte Carlo matches. */
+    private static final int OPENING_MOVES = 4;
+
+    /** Number of untimed passes over the positions before timing
+     *  evaluations. */
+    private static final int EVAL_WARMUP = 20000;
+
+    /** Time spent measuring each evaluator, in nanoseconds. */
+    private static final long EVAL_NANOS = 2000000000L;
+
+    /** The harness for micro-benchmarks: 2 warmup iterations and 5
+     *  timed iterations of a second each. */
+    private static final Harness HARNESS = new Harness(2, 5, 1000000000L);
+
+    /** Positions (as numbers of random moves from the start) and depths
+     *  for perft. */
+    private static final int[][] PERFT_POSITIONS = {
+        { 0, 2 }, { 20, 2 }, { 40, 3 },
+    };
+
+    /** Number of random moves to the position used by the makeundo,
+     *  copy, and parse benchmarks, and number of copies per call. */
+    private static final int MICRO_MOVES = 20, MICRO_REPEATS = 1000;
+
+    /** Number of random games in the log from which "book" builds its
+     *  book, and the number of times it looks up each key. */
+    private static final int BOOK_GAMES = 2000, BOOK_REPEATS = 20;
+
+    /** Numbers of random moves from the initial position to the
+     *  positions used for timing Endgame, the number of games played
+     *  for each, and the number of timed repetitions. */
+    private static final int[] ENDGAME_MOVES = { 50, 60, 70, 80 };
+    /** Number of random games for each entry in ENDGAME_MOVES. */
+    private static final int ENDGAME_SEEDS = 4;
+    /** Number of repeated calls timed for each Endgame position. */
+    private static final int ENDGAME_REPEATS = 1000;
+
+    /** Nanoseconds per microsecond. */
+    private static final double NANOS_PER_US = 1e3;
+
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MS = 1e6;
+
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SEC = 1e9;
+
+    /** Receives results computed only for timing, so that they cannot be
+     *  optimized away. */
+    private static volatile int _sink;
+}
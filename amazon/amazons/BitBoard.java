@@ -0,0 +1,328 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/** The contents of an Amazons board represented as 128-bit occupancy
+ *  masks, one for each kind of Piece.  Each mask is held in two longs:
+ *  bit K of the low word stands for the square with index K (as given by
+ *  Square.index()), and bit K of the high word for the square with index
+ *  K + 64.  The squares that lie in each direction from each square are
+ *  precomputed as ray masks, so that finding the squares reachable by a
+ *  queen move takes a few mask operations per direction rather than a
+ *  walk over the board.
+ *  @author Kelley
+ */
+final class BitBoard {
+
+    /** The number of squares on the board. */
+    static final int SQUARES = BoardSize.SQUARES;
+
+    /** Value used for an "asEmpty" square index to indicate that there
+     *  is no such square. */
+    static final int NONE = -1;
+
+    /** An upper bound on the number of squares reachable by a queen move
+     *  from any square. */
+    static final int MAX_REACH = 4 * (BoardSize.SIZE - 1);
+
+    /** Number of bits in each word of a mask. */
+    static final int WORD = Long.SIZE;
+
+    /** Number of queen directions. */
+    private static final int DIRS = 8;
+
+    /** An empty board. */
+    BitBoard() {
+        _lo = new long[Piece.values().length];
+        _hi = new long[Piece.values().length];
+    }
+
+    /** Set my contents to those of MODEL. */
+    void copy(BitBoard model) {
+        System.arraycopy(model._lo, 0, _lo, 0, _lo.length);
+        System.arraycopy(model._hi, 0, _hi, 0, _hi.length);
+    }
+
+    /** Make every square empty. */
+    void clear() {
+        for (int k = 0; k < _lo.length; k += 1) {
+            _lo[k] = _hi[k] = 0;
+        }
+    }
+
+    /** Return the contents of the square with index INDEX. */
+    Piece get(int index) {
+        if (index < WORD) {
+            long bit = 1L << index;
+            if ((_lo[WHITE.ordinal()] & bit) != 0) {
+                return WHITE;
+            } else if ((_lo[BLACK.ordinal()] & bit) != 0) {
+                return BLACK;
+            } else if ((_lo[SPEAR.ordinal()] & bit) != 0) {
+                return SPEAR;
+            }
+        } else {
+            long bit = 1L << (index - WORD);
+            if ((_hi[WHITE.ordinal()] & bit) != 0) {
+                return WHITE;
+            } else if ((_hi[BLACK.ordinal()] & bit) != 0) {
+                return BLACK;
+            } else if ((_hi[SPEAR.ordinal()] & bit) != 0) {
+                return SPEAR;
+            }
+        }
+        return EMPTY;
+    }
+
+    /** Set the square with index INDEX to P. */
+    void put(Piece p, int index) {
+        int k = p.ordinal();
+        if (index < WORD) {
+            long bit = 1L << index;
+            _lo[WHITE.ordinal()] &= ~bit;
+            _lo[BLACK.ordinal()] &= ~bit;
+            _lo[SPEAR.ordinal()] &= ~bit;
+            if (p != EMPTY) {
+                _lo[k] |= bit;
+            }
+        } else {
+            long bit = 1L << (index - WORD);
+            _hi[WHITE.ordinal()] &= ~bit;
+            _hi[BLACK.ordinal()] &= ~bit;
+            _hi[SPEAR.ordinal()] &= ~bit;
+            if (p != EMPTY) {
+                _hi[k] |= bit;
+            }
+        }
+    }
+
+    /** Return the low word of the mask of squares holding P, which must
+     *  not be EMPTY. */
+    long lo(Piece p) {
+        return _lo[p.ordinal()];
+    }
+
+    /** Return the high word of the mask of squares holding P, which must
+     *  not be EMPTY. */
+    long hi(Piece p) {
+        return _hi[p.ordinal()];
+    }
+
+    /** Return the low word of the mask of empty squares. */
+    long emptyLo() {
+        return ~occupiedLo() & BOARD_LO;
+    }
+
+    /** Return the high word of the mask of empty squares. */
+    long emptyHi() {
+        return ~occupiedHi() & BOARD_HI;
+    }
+
+    /** Return the low word of the mask of occupied squares. */
+    long occupiedLo() {
+        return _lo[WHITE.ordinal()] | _lo[BLACK.ordinal()]
+            | _lo[SPEAR.ordinal()];
+    }
+
+    /** Return the high word of the mask of occupied squares. */
+    long occupiedHi() {
+        return _hi[WHITE.ordinal()] | _hi[BLACK.ordinal()]
+            | _hi[SPEAR.ordinal()];
+    }
+
+    /** Return true iff all squares from FROM (exclusive) to TO
+     *  (inclusive) are empty, other than ASEMPTY (which may be NONE).
+     *  TO must lie in direction DIR from FROM. */
+    boolean isClear(int from, int dir, int to, int asEmpty) {
+        long occLo = occupiedLo(), occHi = occupiedHi();
+        if (asEmpty != NONE) {
+            occLo &= ~bitLo(asEmpty);
+            occHi &= ~bitHi(asEmpty);
+        }
+        int r0 = from * DIRS + dir, r1 = to * DIRS + dir;
+        return ((RAY_LO[r0] & ~RAY_LO[r1]) & occLo) == 0
+            && ((RAY_HI[r0] & ~RAY_HI[r1]) & occHi) == 0;
+    }
+
+    /** Store the indices of all squares holding P into OUT, starting at
+     *  OUT[0], and return their number. */
+    int squares(Piece p, int[] out) {
+        int n = 0;
+        for (long m = _lo[p.ordinal()]; m != 0; m &= m - 1) {
+            out[n] = Long.numberOfTrailingZeros(m);
+            n += 1;
+        }
+        for (long m = _hi[p.ordinal()]; m != 0; m &= m - 1) {
+            out[n] = WORD + Long.numberOfTrailingZeros(m);
+            n += 1;
+        }
+        return n;
+    }
+
+    /** Store the indices of all squares reachable by an unblocked queen
+     *  move from FROM into OUT, starting at OUT[START], treating ASEMPTY
+     *  (which may be NONE) as empty.  Return the index in OUT just past
+     *  the last square stored. */
+    int reachable(int from, int asEmpty, int[] out, int start) {
+        reach(from, asEmpty);
+        int n = start;
+        for (long m = _reachLo; m != 0; m &= m - 1) {
+            out[n] = Long.numberOfTrailingZeros(m);
+            n += 1;
+        }
+        for (long m = _reachHi; m != 0; m &= m - 1) {
+            out[n] = WORD + Long.numberOfTrailingZeros(m);
+            n += 1;
+        }
+        return n;
+    }
+
+    /** Return the number of squares reachable by an unblocked queen move
+     *  from FROM, treating ASEMPTY (which may be NONE) as empty. */
+    int countReachable(int from, int asEmpty) {
+        reach(from, asEmpty);
+        return Long.bitCount(_reachLo) + Long.bitCount(_reachHi);
+    }
+
+    /** Return the low word of the mask computed by the last call to
+     *  reach. */
+    long reachLo() {
+        return _reachLo;
+    }
+
+    /** Return the high word of the mask computed by the last call to
+     *  reach. */
+    long reachHi() {
+        return _reachHi;
+    }
+
+    /** Compute the mask of squares reachable by an unblocked queen move
+     *  from FROM, treating ASEMPTY (which may be NONE) as empty, making
+     *  it available through reachLo and reachHi. */
+    void reach(int from, int asEmpty) {
+        long occLo = occupiedLo(), occHi = occupiedHi();
+        if (asEmpty != NONE) {
+            occLo &= ~bitLo(asEmpty);
+            occHi &= ~bitHi(asEmpty);
+        }
+        long resultLo, resultHi;
+        resultLo = resultHi = 0;
+        for (int dir = 0; dir < DIRS; dir += 1) {
+            int r = from * DIRS + dir;
+            long rayLo = RAY_LO[r], rayHi = RAY_HI[r];
+            long blockLo = rayLo & occLo, blockHi = rayHi & occHi;
+            if ((blockLo | blockHi) != 0) {
+                int b;
+                if (INCREASING[dir]) {
+                    b = blockLo != 0 ? Long.numberOfTrailingZeros(blockLo)
+                        : WORD + Long.numberOfTrailingZeros(blockHi);
+                } else {
+                    b = blockHi != 0
+                        ? 2 * WORD - 1 - Long.numberOfLeadingZeros(blockHi)
+                        : WORD - 1 - Long.numberOfLeadingZeros(blockLo);
+                }
+                rayLo &= ~RAY_LO[b * DIRS + dir] & ~bitLo(b);
+                rayHi &= ~RAY_HI[b * DIRS + dir] & ~bitHi(b);
+            }
+            resultLo |= rayLo;
+            resultHi |= rayHi;
+        }
+        _reachLo = resultLo;
+        _reachHi = resultHi;
+    }
+
+    /** Return true iff some queen of SIDE has an empty square next to
+     *  it.  Since a queen can always throw its spear back to the square
+     *  it came from, this is true iff SIDE has a legal move.  Stops at
+     *  the first such queen. */
+    boolean hasMove(Piece side) {
+        long emptyLo = emptyLo(), emptyHi = emptyHi();
+        for (long m = _lo[side.ordinal()]; m != 0; m &= m - 1) {
+            int k = Long.numberOfTrailingZeros(m);
+            if ((NEIGHBORS_LO[k] & emptyLo | NEIGHBORS_HI[k] & emptyHi)
+                != 0) {
+                return true;
+            }
+        }
+        for (long m = _hi[side.ordinal()]; m != 0; m &= m - 1) {
+            int k = WORD + Long.numberOfTrailingZeros(m);
+            if ((NEIGHBORS_LO[k] & emptyLo | NEIGHBORS_HI[k] & emptyHi)
+                != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the low word of the mask of squares adjacent (by a king
+     *  move) to square INDEX. */
+    static long neighborsLo(int index) {
+        return NEIGHBORS_LO[index];
+    }
+
+    /** Return the high word of the mask of squares adjacent (by a king
+     *  move) to square INDEX. */
+    static long neighborsHi(int index) {
+        return NEIGHBORS_HI[index];
+    }
+
+    /** Return the low word of the mask containing only square INDEX. */
+    static long bitLo(int index) {
+        return index < WORD ? 1L << index : 0;
+    }
+
+    /** Return the high word of the mask containing only square INDEX. */
+    static long bitHi(int index) {
+        return index < WORD ? 0 : 1L << (index - WORD);
+    }
+
+    /** Directions (as for Square.queenMove) in which square indices
+     *  increase. */
+    private static final boolean[] INCREASING = {
+        true, true, true, false, false, false, false, true
+    };
+
+    /** RAY_LO[8 * K + D] and RAY_HI[8 * K + D] are the low and high words
+     *  of the mask of squares lying in direction D from the square with
+     *  index K, excluding that square itself. */
+    private static final long[] RAY_LO = new long[SQUARES * DIRS],
+        RAY_HI = new long[SQUARES * DIRS];
+
+    /** NEIGHBORS_LO[K] and NEIGHBORS_HI[K] are the low and high words of
+     *  the mask of squares adjacent to the square with index K. */
+    private static final long[] NEIGHBORS_LO = new long[SQUARES],
+        NEIGHBORS_HI = new long[SQUARES];
+
+    /** The low and high words of the mask of all squares on the board. */
+    private static final long BOARD_LO, BOARD_HI;
+
+    static {
+        assert SQUARES <= 2 * WORD;
+        long lo, hi;
+        lo = hi = 0;
+        for (int k = 0; k < SQUARES; k += 1) {
+            lo |= bitLo(k);
+            hi |= bitHi(k);
+            for (int dir = 0; dir < DIRS; dir += 1) {
+                int[] ray = Square.ray(k, dir);
+                if (ray.length > 0) {
+                    NEIGHBORS_LO[k] |= bitLo(ray[0]);
+                    NEIGHBORS_HI[k] |= bitHi(ray[0]);
+                }
+                for (int to : ray) {
+                    RAY_LO[k * DIRS + dir] |= bitLo(to);
+                    RAY_HI[k * DIRS + dir] |= bitHi(to);
+                }
+            }
+        }
+        BOARD_LO = lo;
+        BOARD_HI = hi;
+    }
+
+    /** Masks of the squares holding each kind of Piece, indexed by
+     *  ordinal.  The entries for EMPTY are unused. */
+    private final long[] _lo, _hi;
+
+    /** The result of the last call to reach. */
+    private long _reachLo, _reachHi;
+}
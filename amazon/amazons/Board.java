@@ -1,11 +1,10 @@
 package amazons;
 
+import java.util.Arrays;
 import java.util.Stack;
 import java.util.Iterator;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Random;
 import static amazons.Piece.*;
-import static amazons.Move.mv;
 import static amazons.Utils.*;
 
 
@@ -15,9 +14,16 @@ import static amazons.Utils.*;
 class Board {
 
     /**
-     * The number of squares on a side of the board.
+     * The number of squares on a side of the board (see BoardSize).
      */
-    static final int SIZE = 10;
+    static final int SIZE = BoardSize.SIZE;
+
+    /**
+     * The greatest number of moves in a game from the initial position.
+     * Each move fills one more square with a spear, and the eight
+     * queens fill the rest.
+     */
+    static final int MAX_MOVES = SIZE * SIZE - 8;
 
     /**
      * Initializes a game board with SIZE squares on a side in the
@@ -35,50 +41,54 @@ class Board {
     }
 
     /**
-     * Copies MODEL into me.
+     * Copies MODEL into me.  Afterwards, I share no mutable state with
+     * MODEL: I have my own contents and my own record of the moves that
+     * led to them, so that either of us may make and undo moves (in
+     * different threads, if need be) without affecting the other.  The
+     * copy takes time proportional to the number of squares plus the
+     * number of moves made, and allocates nothing unless my record of
+     * moves is too short to hold MODEL's.
      */
     void copy(Board model) {
         if (model == this) {
             return;
-        } else {
-            this._board = new Piece[SIZE][SIZE];
-            for (int i = 0; i < _board.length; i++) {
-                for (int j = 0; j < _board[i].length; j++) {
-                    this._board[i][j] = model._board[i][j];
-                }
-            }
-            this._turn = model._turn;
-            this._winner = model._winner;
-            this._moves = model._moves;
-            this._movesStack = model._movesStack;
         }
+        System.arraycopy(model._contents, 0, _contents, 0, _contents.length);
+        _bits.copy(model._bits);
+        _turn = model._turn;
+        _hash = model._hash;
+        _winner = model._winner;
+        _moves = model._moves;
+        if (_history.length < _moves) {
+            _history = new int[model._history.length];
+            _winners = new Piece[model._history.length];
+        }
+        System.arraycopy(model._history, 0, _history, 0, _moves);
+        System.arraycopy(model._winners, 0, _winners, 0, _moves);
     }
 
     /**
-     * Clears the board to the initial position.
+     * Clears the board to the initial position.  The queens stand on
+     * the edges, a third of the way in from the corners (as on a 10x10
+     * board, where white's are on a4, d1, g1, and j4).
      */
     void init() {
         _turn = WHITE;
-        _winner = null;
+        _hash = 0;
+        _winner = EMPTY;
         _moves = 0;
-        _movesStack = new Stack<>();
-
-        this._board = new Piece[SIZE][SIZE];
-        for (int i = 0; i < _board.length; i++) {
-            for (int j = 0; j < _board[i].length; j++) {
-                _board[i][j] = EMPTY;
-            }
-
-        }
-        _board[0][3] = BLACK;
-        _board[0][6] = BLACK;
-        _board[3][0] = BLACK;
-        _board[3][9] = BLACK;
-
-        _board[6][0] = WHITE;
-        _board[6][9] = WHITE;
-        _board[9][3] = WHITE;
-        _board[9][6] = WHITE;
+        Arrays.fill(_contents, EMPTY);
+        _bits.clear();
+        int d = (SIZE - 1) / 3, far = SIZE - 1;
+        put(BLACK, d, far);
+        put(BLACK, far - d, far);
+        put(BLACK, 0, far - d);
+        put(BLACK, far, far - d);
+
+        put(WHITE, 0, d);
+        put(WHITE, far, d);
+        put(WHITE, d, 0);
+        put(WHITE, far - d, 0);
     }
 
     /**
@@ -96,38 +106,85 @@ class Board {
         return _moves;
     }
 
+    /**
+     * Return the occupancy masks for my contents.  These change as I do,
+     * and must not be modified by the caller.
+     */
+    BitBoard bits() {
+        return _bits;
+    }
+
+    /**
+     * Return a 64-bit key identifying the current position (the
+     * contents of the squares and the side to move).  Equal positions
+     * have equal keys; different positions have different keys with
+     * high probability.  The key is maintained incrementally as pieces
+     * are put and moves made or undone.
+     */
+    long hashKey() {
+        return _hash;
+    }
+
+    /**
+     * Return the value hashKey() should have in the current position,
+     * computed from scratch.
+     */
+    long computeHashKey() {
+        long key = _turn == BLACK ? BLACK_TO_MOVE : 0;
+        for (int k = 0; k < BitBoard.SQUARES; k += 1) {
+            key ^= zobrist(_bits.get(k), k);
+        }
+        return key;
+    }
+
+    /** Return the hash key component for P on the square with index
+     *  INDEX. */
+    private static long zobrist(Piece p, int index) {
+        return ZOBRIST[p.ordinal() * BitBoard.SQUARES + index];
+    }
+
     /**
      * Return the winner in the current position, or null if the game is
      * not yet finished.
      */
     Piece winner() {
-        Iterator<Move> white = legalMoves(WHITE);
-        Iterator<Move> black = legalMoves(BLACK);
-        if (_turn.equals(BLACK) && black.hasNext() && !white.hasNext()) {
-            return BLACK;
-        } else if (_turn.equals(WHITE) && white.hasNext() && !black.hasNext()) {
-            return WHITE;
+        if (_winner == EMPTY) {
+            boolean white = hasMove(WHITE);
+            boolean black = hasMove(BLACK);
+            if (_turn.equals(BLACK) && black && !white) {
+                _winner = BLACK;
+            } else if (_turn.equals(WHITE) && white && !black) {
+                _winner = WHITE;
+            } else {
+                _winner = null;
+            }
         }
-        return null;
+        return _winner;
+    }
+
+    /** Return true iff SIDE (regardless of whose turn it is) has at
+     *  least one legal move. */
+    boolean hasMove(Piece side) {
+        return _bits.hasMove(side);
     }
 
     /**
      * Return the contents the square at S.
      */
     final Piece get(Square s) {
-        return this._board[s.row()][s.col()];
+        return _contents[s.index()];
     }
 
     /**
      * Return the contents of the square at (COL, ROW), where
-     * 0 <= COL, ROW <= 9.
+     * 0 <= COL, ROW < SIZE.
      */
     final Piece get(int col, int row) {
         return get(Square.sq(col, row));
     }
 
     /**
-     * Return the contents of the square at 0 <= COL, ROW <= 9.
+     * Return the contents of the square at 0 <= COL, ROW < SIZE.
      */
     final Piece get(char col, char row) {
         return get(col - 'a', row - '1');
@@ -137,7 +194,17 @@ class Board {
      * Set square S to P.
      */
     final void put(Piece p, Square s) {
-        this._board[s.row()][s.col()] = p;
+        set(p, s.index());
+        Arrays.fill(_winners, 0, _moves, EMPTY);
+    }
+
+    /** Set the square whose index is INDEX to P, updating the hash key
+     *  and clearing the cached winner. */
+    private void set(Piece p, int index) {
+        _hash ^= zobrist(_contents[index], index) ^ zobrist(p, index);
+        _winner = EMPTY;
+        _contents[index] = p;
+        _bits.put(p, index);
     }
 
     /**
@@ -163,46 +230,15 @@ class Board {
      */
     boolean isUnblockedMove(Square from, Square to, Square asEmpty) {
         if (from.isQueenMove(to)) {
-            Square currQ = from;
-            int direc = currQ.direction(to);
-            int dy = to.row() - from.row();
-            int dx = to.col() - from.col();
-
-            if (Math.abs(dx) == Math.abs(dy)) {
-                for (int i = 1; i < Math.abs(dx) + 1; i++) {
-                    currQ = from.queenMove(direc, i);
-                    Piece currP = get(currQ);
-                    if (currP == EMPTY || currQ == asEmpty) {
-                        continue;
-                    } else {
-                        return false;
-                    }
-                }
-            } else if (dx != 0) {
-                for (int i = 1; i < Math.abs(dx) + 1; i++) {
-                    currQ = from.queenMove(direc, i);
-                    Piece currP = get(currQ);
-                    if (currP == EMPTY || currQ == asEmpty) {
-                        continue;
-                    } else {
-                        return false;
-                    }
-                }
-            } else if (dy != 0) {
-                for (int i = 1; i < Math.abs(dy) + 1; i++) {
-                    currQ = from.queenMove(direc, i);
-                    Piece currP = get(currQ);
-                    if (currP == EMPTY || currQ == asEmpty) {
-                        continue;
-                    } else {
-                        return false;
-                    }
-                }
-            }
-            return true;
+            return _bits.isClear(from.index(), from.direction(to),
+                                 to.index(), index(asEmpty));
         }
         return false;
+    }
 
+    /** Return the index of S, or BitBoard.NONE if S is null. */
+    private static int index(Square s) {
+        return s == null ? BitBoard.NONE : s.index();
     }
 
     /**
@@ -250,18 +286,59 @@ class Board {
      */
     void makeMove(Square from, Square to, Square spear) {
         if (isLegal(from, to, spear)) {
-            Move currMove = mv(from, to, spear);
-            _movesStack.push(currMove);
-            put(EMPTY, from);
-            put(turn(), to);
-            put(SPEAR, spear);
+            record(Move.pack(from.index(), to.index(), spear.index()));
+            set(EMPTY, from.index());
+            set(turn(), to.index());
+            set(SPEAR, spear.index());
             _moves += 1;
             _turn = turn().opponent();
+            _hash ^= BLACK_TO_MOVE;
+        }
+    }
+
+    /** Move according to the packed move MOVE (see Move.pack), which
+     *  must be legal.  Unlike the other forms of makeMove, this does not
+     *  check MOVE, and is intended for moves from legalMoves(Piece,
+     *  int[]). */
+    void makeMove(int move) {
+        record(move);
+        set(EMPTY, Move.fromIndex(move));
+        set(turn(), Move.toIndex(move));
+        set(SPEAR, Move.spearIndex(move));
+        _moves += 1;
+        _turn = turn().opponent();
+        _hash ^= BLACK_TO_MOVE;
+    }
+
+    /** Add the packed move MOVE, about to be made, to my undo log,
+     *  with the cached winner of the current position. */
+    private void record(int move) {
+        if (_moves == _history.length) {
+            int size = 2 * _history.length;
+            _history = Arrays.copyOf(_history, size);
+            _winners = Arrays.copyOf(_winners, size);
+        }
+        _history[_moves] = move;
+        _winners[_moves] = _winner;
+    }
+
+    /** Return the Kth move (packed, from 0) of those made to reach the
+     *  current position, where 0 <= K < numMoves(). */
+    int move(int k) {
+        if (k < 0 || k >= _moves) {
+            throw new IndexOutOfBoundsException("no move " + k);
         }
+        return _history[k];
     }
-    /** Return stack of moves made in the game. **/
+
+    /** Return a new stack of the moves made to reach the current
+     *  position, the last on top.  Changes to it do not affect me. **/
     public Stack<Move> movesStack() {
-        return _movesStack;
+        Stack<Move> moves = new Stack<>();
+        for (int k = 0; k < _moves; k += 1) {
+            moves.push(Move.mv(_history[k]));
+        }
+        return moves;
     }
     /** Move according to MOVE, assuming it is a legal move.
      */
@@ -270,15 +347,26 @@ class Board {
     }
 
     /**
-     * Undo one move.  Has no effect on the initial board.
+     * Undo one move.  Has no effect on the initial board.  The cached
+     * winner is restored from the undo log, and the hash key updated
+     * for just the three squares the move changed.
      */
     void undo() {
         if (numMoves() > 0) {
             _moves -= 1;
-            Move undo1 = _movesStack.pop();
-            put(get(undo1.to()), undo1.from());
-            put(EMPTY, undo1.spear());
-            put(EMPTY, undo1.to());
+            int move = _history[_moves];
+            int from = Move.fromIndex(move), to = Move.toIndex(move),
+                spear = Move.spearIndex(move);
+            Piece queen = _contents[to];
+            _contents[spear] = EMPTY;
+            _bits.put(EMPTY, spear);
+            _contents[to] = EMPTY;
+            _bits.put(EMPTY, to);
+            _contents[from] = queen;
+            _bits.put(queen, from);
+            _hash ^= zobrist(queen, from) ^ zobrist(queen, to)
+                ^ zobrist(SPEAR, spear) ^ BLACK_TO_MOVE;
+            _winner = _winners[_moves];
             _turn = turn().opponent();
         }
     }
@@ -304,67 +392,150 @@ class Board {
     Iterator<Move> legalMoves(Piece side) {
         return new LegalMoveIterator(side);
     }
-    /**An iterator used by reachableFrom.*/
+
+    /** Store all legal moves for SIDE (regardless of whose turn it is)
+     *  into MOVES, packed as for Move.pack, and return their number.
+     *  MOVES must have room for at least moveLimit(SIDE) moves.  Uses
+     *  no storage other than MOVES, so that searches may reuse one
+     *  buffer per ply. */
+    int legalMoves(Piece side, int[] moves) {
+        int n = 0;
+        int queens = _bits.squares(side, _queens);
+        for (int q = 0; q < queens; q += 1) {
+            int k = _queens[q];
+            int dests = _bits.reachable(k, BitBoard.NONE, _dests, 0);
+            for (int i = 0; i < dests; i += 1) {
+                int to = _dests[i];
+                int end = _bits.reachable(to, k, moves, n);
+                for (; n < end; n += 1) {
+                    moves[n] = Move.pack(k, to, moves[n]);
+                }
+            }
+        }
+        return n;
+    }
+
+    /** Store the queen moves (the first halves of the legal moves) of
+     *  SIDE into MOVES, packed as for Move.pack with a spear index of 0,
+     *  and return their number.  MOVES must have room for at least
+     *  queenMoveLimit(SIDE) moves.  The spear throws that complete each
+     *  are given by spearThrows. */
+    int queenMoves(Piece side, int[] moves) {
+        int n = 0;
+        int queens = _bits.squares(side, _queens);
+        for (int q = 0; q < queens; q += 1) {
+            int k = _queens[q];
+            int end = _bits.reachable(k, BitBoard.NONE, moves, n);
+            for (; n < end; n += 1) {
+                moves[n] = Move.pack(k, moves[n], 0);
+            }
+        }
+        return n;
+    }
+
+    /** Store the indices of the squares to which a queen moved from the
+     *  square with index FROM to that with index TO could throw its
+     *  spear into SPEARS, and return their number.  SPEARS must have
+     *  room for BitBoard.MAX_REACH squares. */
+    int spearThrows(int from, int to, int[] spears) {
+        return _bits.reachable(to, from, spears, 0);
+    }
+
+    /** Return the number of legal moves for SIDE (regardless of whose
+     *  turn it is), without generating them. */
+    int countMoves(Piece side) {
+        int n = 0;
+        int queens = _bits.squares(side, _queens);
+        for (int q = 0; q < queens; q += 1) {
+            int k = _queens[q];
+            int dests = _bits.reachable(k, BitBoard.NONE, _dests, 0);
+            for (int i = 0; i < dests; i += 1) {
+                n += _bits.countReachable(_dests[i], k);
+            }
+        }
+        return n;
+    }
+
+    /** Return an upper bound on the number of legal moves for SIDE in
+     *  the current position: the size needed for the MOVES argument to
+     *  legalMoves(SIDE, MOVES). */
+    int moveLimit(Piece side) {
+        int queens = Long.bitCount(_bits.lo(side))
+            + Long.bitCount(_bits.hi(side));
+        return queens * BitBoard.MAX_REACH * BitBoard.MAX_REACH;
+    }
+
+    /** Return an upper bound on the number of queen moves for SIDE in
+     *  the current position: the size needed for the MOVES argument to
+     *  queenMoves(SIDE, MOVES). */
+    int queenMoveLimit(Piece side) {
+        int queens = Long.bitCount(_bits.lo(side))
+            + Long.bitCount(_bits.hi(side));
+        return queens * BitBoard.MAX_REACH;
+    }
+
+    /**An iterator used by reachableFrom.  It walks the precomputed
+     * rays from its starting square (see Square.ray) in turn, stopping
+     * each at the first occupied square.*/
     private class ReachableFromIterator implements Iterator<Square> {
 
         /**Iterator of all squares reachable by queen move from FROM,
          * treating ASEMPTY as empty.*/
         ReachableFromIterator(Square from, Square asEmpty) {
-            _from = from;
-            _dir = 0;
-            _steps = 0;
-            _asEmpty = asEmpty;
-            next();
+            _from = from.index();
+            _asEmpty = index(asEmpty);
+            _dir = -1;
+            _ray = EMPTY_RAY;
+            toNext();
         }
 
         @Override
         public boolean hasNext() {
-            toNext();
             return _dir < 8;
         }
 
         @Override
         public Square next() {
-            if (_dir < 8) {
-                return _from.queenMove(_dir, _steps);
+            if (hasNext()) {
+                Square result = Square.sq(_ray[_steps]);
+                _steps += 1;
+                toNext();
+                return result;
             } else {
                 throw error("queen does not have another move");
             }
 
         }
 
-        /**Advance _dir and _steps,
-         * so that the next valid Square is_steps steps
-         * in direction _dir from _from.*/
+        /**Advance _dir and _steps to the next unblocked square, or set
+         * _dir to 8 if there is none.*/
         private void toNext() {
-            _steps += 1;
-            Square to = _from.queenMove(_dir, _steps);
-            while (to == null) {
+            while (_steps >= _ray.length || !isOpen(_ray[_steps])) {
                 _dir += 1;
-                _steps = 1;
-                if (_dir < 8) {
-                    to = _from.queenMove(_dir, _steps);
-                } else {
-                    break;
-                }
-            }
-            while (_dir < 8 && !isUnblockedMove(_from, to, _asEmpty)) {
-                _dir += 1;
-                _steps = 1;
-                if (_dir < 8) {
-                    to = _from.queenMove(_dir, _steps);
+                if (_dir == 8) {
+                    return;
                 }
+                _ray = Square.ray(_from, _dir);
+                _steps = 0;
             }
         }
 
-        /**Starting square.*/
-        private Square _from;
-        /**Current direction.*/
+        /**Return true iff the square with index K is empty or is
+         * _asEmpty.*/
+        private boolean isOpen(int k) {
+            return _contents[k] == EMPTY || k == _asEmpty;
+        }
+
+        /**Index of the starting square.*/
+        private final int _from;
+        /**Index of the square treated as empty, or BitBoard.NONE.*/
+        private final int _asEmpty;
+        /**Current direction (8 when done).*/
         private int _dir;
-        /**Current distance.*/
+        /**The ray in direction _dir from _from.*/
+        private int[] _ray;
+        /**Position in _ray of the next square to deliver.*/
         private int _steps;
-        /**Square treated as empty.*/
-        private Square _asEmpty;
 
     }
 
@@ -373,106 +544,90 @@ class Board {
 
         /**All legal moves for SIDE (WHITE or BLACK).*/
         LegalMoveIterator(Piece side) {
-            _startingSquares = Square.iterator();
-            _fromPiece = side;
-            allQueens = new ArrayList<>();
-            _spearThrows = NO_SQUARES;
-            _pieceMoves = NO_SQUARES;
-            while (_startingSquares.hasNext()) {
-                Square sq = _startingSquares.next();
-                if (get(sq).equals(_fromPiece)) {
-                    allQueens.add(sq);
-                }
-            }
+            _allMoves = new int[moveLimit(side)];
+            _count = legalMoves(side, _allMoves);
             numMoves = 0;
-            toNext();
         }
         @Override
         public boolean hasNext() {
-            return numMoves <  _allMoves.size();
+            return numMoves < _count;
         }
 
         @Override
         public Move next() {
             if (hasNext()) {
-                Move move = _allMoves.get(numMoves);
+                Move move = Move.mv(_allMoves[numMoves]);
                 numMoves++;
                 return move;
             }
             return null;
         }
 
-        /** Advance so that the next valid Move is
-         * _start-_nextSquare(sp), where sp is the next value of
-         * _spearThrows. **/
-        public void toNext() {
-            _allMoves = new ArrayList<>();
-            for (Square queen : allQueens) {
-                _start = queen;
-                _pieceMoves = reachableFrom(_start, null);
-                while (_pieceMoves.hasNext()) {
-                    _nextSquare = _pieceMoves.next();
-                    _spearThrows = reachableFrom(_nextSquare, _start);
-                    while (_spearThrows.hasNext()) {
-                        _spear = _spearThrows.next();
-                        Move next = mv(_start, _nextSquare, _spear);
-                        _allMoves.add(next);
-                    }
-                }
-            }
-        }
-
-        /**Color of side whose moves we are iterating.*/
-        private Piece _fromPiece;
-        /**Current starting square.*/
-        private Square _start;
-        /**Remaining starting squares to consider.*/
-        private Iterator<Square> _startingSquares;
-        /**Current piece's new position.*/
-        private Square _nextSquare;
-        /**Remaining moves from _start to consider.*/
-        private Iterator<Square> _pieceMoves;
-        /**Remaining spear throws from _piece to consider.*/
-        private Iterator<Square> _spearThrows;
-        /**Current spear location. */
-        private Square _spear;
-        /** Possible moves for queens on board. */
-        private ArrayList<Move> _allMoves;
+        /** Possible moves for queens on board, packed. */
+        private int[] _allMoves;
+        /** Number of moves in _allMoves. */
+        private int _count;
         /** Number of moves made. **/
         private int numMoves;
-        /** Queens for this board. **/
-        private ArrayList<Square> allQueens;
     }
 
     @Override
     public String toString() {
         String printed = "";
-        for (Piece[] row : _board) {
+        for (int row = SIZE - 1; row >= 0; row -= 1) {
             printed += "   ";
-            int ind = 0;
-            for (Piece p : row) {
-                if (ind == _board.length - 1) {
-                    printed += p.toString() + '\n';
-                } else {
-                    printed += p.toString() + ' ';
-                }
-                ind++;
+            for (int col = 0; col < SIZE; col += 1) {
+                printed += _contents[row * SIZE + col].toString()
+                    + (col == SIZE - 1 ? '\n' : ' ');
             }
         }
         return printed;
     }
 
-    /**An empty iterator for initialization.*/
-    private static final Iterator<Square> NO_SQUARES =
-            Collections.emptyIterator();
+    /**Hash key components for each kind of Piece on each square, indexed
+     * by SQUARES * ordinal + square index.  Those for EMPTY are 0. */
+    private static final long[] ZOBRIST =
+        new long[Piece.values().length * BoardSize.SQUARES];
+    /**Hash key component present when it is black's move. */
+    private static final long BLACK_TO_MOVE;
+    /**Seed for the hash key components, fixed so that keys are the same
+     * from run to run. */
+    private static final long ZOBRIST_SEED = 0x61B;
+
+    static {
+        Random keys = new Random(ZOBRIST_SEED);
+        for (int k = BoardSize.SQUARES; k < ZOBRIST.length; k += 1) {
+            ZOBRIST[k] = keys.nextLong();
+        }
+        BLACK_TO_MOVE = keys.nextLong();
+    }
+
     /**Piece whose turn it is (BLACK or WHITE). */
     private Piece _turn;
-    /**Cached value of winner on this board, or EMPTY if not been computed. */
+    /**Cached value of winner on this board, or EMPTY if not been computed.
+     * Every change to the board goes through put, which resets it. */
     private Piece _winner;
-    /**Game board. **/
-    private Piece[][] _board;
+    /**Hash key of the current position. */
+    private long _hash;
+    /**A ray with no squares. */
+    private static final int[] EMPTY_RAY = new int[0];
+    /**Contents of each square, indexed by Square.index(). **/
+    private final Piece[] _contents = new Piece[BoardSize.SQUARES];
+    /**Occupancy masks for _contents. */
+    private final BitBoard _bits = new BitBoard();
+    /**Scratch space for queen destinations during move generation. */
+    private final int[] _dests = new int[BitBoard.MAX_REACH];
+    /**Scratch space for queen locations during move generation. */
+    private final int[] _queens = new int[BitBoard.SQUARES];
     /**Number of moves made in game. */
     private int _moves;
-    /**Stack to keep track of moves.*/
-    private Stack<Move> _movesStack;
+    /**The undo log: the moves (packed) made to reach the current
+     * position, in order, in _history[0 .. _moves-1], and the cached
+     * winners of the positions they were made from in the same elements
+     * of _winners (cleared by put).  These hold MAX_MOVES moves, enough
+     * for any game from the initial position, and grow only for
+     * positions set up with put that have more empty squares. */
+    private int[] _history = new int[MAX_MOVES];
+    /**Cached winners before each move in _history. */
+    private Piece[] _winners = new Piece[MAX_MOVES];
 }
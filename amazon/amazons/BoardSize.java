@@ -0,0 +1,38 @@
+package amazons;
+
+import static amazons.Utils.*;
+
+/** The dimensions of the board, fixed when the program starts.  Board,
+ *  BitBoard, Square, and Move all build tables from these, so they are
+ *  kept here, apart from those classes: each of them may then be loaded
+ *  first without seeing another half initialized.
+ *  @author Kelley
+ */
+final class BoardSize {
+
+    /** The name of the system property that gives the number of squares
+     *  on a side of the board (see SIZE). */
+    static final String PROPERTY = "amazons.size";
+
+    /** The least and greatest number of squares on a side of the board.
+     *  Below MIN, the queens' initial squares overlap; above MAX, the
+     *  board does not fit in a BitBoard. */
+    static final int MIN = 4, MAX = 11;
+
+    /** The number of squares on a side of the board: the value of the
+     *  system property PROPERTY, if set, and otherwise 10. */
+    static final int SIZE = Integer.getInteger(PROPERTY, 10);
+
+    /** The number of squares on the board. */
+    static final int SQUARES = SIZE * SIZE;
+
+    static {
+        if (SIZE < MIN || SIZE > MAX) {
+            throw error("board size must be from %d to %d", MIN, MAX);
+        }
+    }
+
+    /** Not instantiable. */
+    private BoardSize() {
+    }
+}
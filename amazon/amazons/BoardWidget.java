@@ -37,14 +37,18 @@ class BoardWidget extends Pad {
     /** Size parameters. */
     private static final int
         SQUARE_SIDE = 30,
-        BOARD_SIDE = SQUARE_SIDE * 10;
+        BOARD_SIDE = SQUARE_SIDE * Board.SIZE,
+        STATUS_HEIGHT = 20;
+
+    /** Color of the status line. */
+    static final Color STATUS_COLOR = Color.BLACK;
 
     /** A graphical representation of an Amazons board that sends commands
      *  derived from mouse clicks to COMMANDS.  */
     BoardWidget(ArrayBlockingQueue<String> commands) {
         _commands = commands;
         setMouseHandler("click", this::mouseClicked);
-        setPreferredSize(BOARD_SIDE, BOARD_SIDE);
+        setPreferredSize(BOARD_SIDE, BOARD_SIDE + STATUS_HEIGHT);
 
         try {
             _whiteQueen = ImageIO.read(Utils.getResource(WHITE_QUEEN_IMAGE));
@@ -58,8 +62,8 @@ class BoardWidget extends Pad {
 
     /** Draw the bare board G. Do */
     private void drawGrid(Graphics2D g) {
-        for (int row = 0; row < 10; row++) {
-            for (int col = 0; col < 10; col++) {
+        for (int row = 0; row < Board.SIZE; row++) {
+            for (int col = 0; col < Board.SIZE; col++) {
                 int x = col * BOARD_SIDE;
                 int y = row * BOARD_SIDE;
                 if ((row % 2) == (col % 2)) {
@@ -75,6 +79,8 @@ class BoardWidget extends Pad {
     @Override
     public synchronized void paintComponent(Graphics2D g) {
         drawGrid(g);
+        g.setColor(STATUS_COLOR);
+        g.drawString(_status, 2, BOARD_SIDE + STATUS_HEIGHT - 4);
     }
 
     /** Draw a queen for side PIECE at square S on G.  */
@@ -105,6 +111,13 @@ class BoardWidget extends Pad {
         repaint();
     }
 
+    /** Show STATUS (for example, the progress of a search) below the
+     *  board.  May be called from any thread. */
+    synchronized void setStatus(String status) {
+        _status = status;
+        repaint();
+    }
+
     /** Turn on move collection iff COLLECTING, and clear any current
      *  partial selection.   When move collection is off, ignore clicks on
      *  the board. */
@@ -147,6 +160,9 @@ class BoardWidget extends Pad {
     /** Image of black queen. */
     private BufferedImage _blackQueen;
 
+    /** Text shown below the board. */
+    private String _status = "";
+
     /** True iff accepting moves from user. */
     private boolean _acceptingMoves;
 }
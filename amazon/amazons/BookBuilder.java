@@ -0,0 +1,191 @@
+package amazons;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static amazons.Piece.*;
+
+/** A tool that builds an OpeningBook from the logs that Controller
+ *  writes (see the --log option of Main).  It replays the games in the
+ *  logs, and for each of the first few plies of each game, credits the
+ *  move played with 2 if the side that played it went on to win, 1 if
+ *  the game did not finish, and 0 if it lost.  Each position and move
+ *  with positive credit becomes a record of the book.  Usage:
+ *
+ *      java amazons.BookBuilder [--plies=N] BOOK LOG...
+ *
+ *  writes the book built from the files LOG... to the file BOOK,
+ *  covering the first N plies of each game (default 12).
+ *  @author Kelley
+ */
+public class BookBuilder {
+
+    /** Default number of plies from the start of each game recorded. */
+    static final int DEFAULT_PLIES = 12;
+
+    /** Build the book as described in the class comment, using ARGS. */
+    public static void main(String... args) {
+        int plies = DEFAULT_PLIES;
+        int k;
+        for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+            if (args[k].startsWith("--plies=")) {
+                plies = Integer.parseInt(args[k].substring(8));
+            } else {
+                usage();
+            }
+        }
+        if (args.length - k < 2) {
+            usage();
+        }
+        BookBuilder builder = new BookBuilder(plies);
+        try {
+            for (int i = k + 1; i < args.length; i += 1) {
+                try (BufferedReader log =
+                     new BufferedReader(new FileReader(args[i]))) {
+                    builder.add(log);
+                }
+            }
+            builder.write(args[k]);
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+        System.out.printf("%d games, %d positions, %d records%n",
+                          builder.games(), builder.positions(),
+                          builder.records());
+    }
+
+    /** Print a usage message and exit. */
+    private static void usage() {
+        System.err.println("Usage: java amazons.BookBuilder [--plies=N]"
+                           + " BOOK LOG...");
+        System.exit(1);
+    }
+
+    /** A builder that records the first PLIES plies of each game. */
+    BookBuilder(int plies) {
+        _plies = plies;
+    }
+
+    /** Replay the games in LOG, a log of commands as written by
+     *  Controller, adding their opening moves to the book.  A game
+     *  starts at the beginning of the log and at each "new" command,
+     *  and ends at the next such point or at "quit".  Commands other
+     *  than moves are ignored, as are illegal moves. */
+    void add(BufferedReader log) throws IOException {
+        _board.init();
+        _pending.clear();
+        String line;
+        while ((line = log.readLine()) != null) {
+            _comment.reset(line);
+            String cmnd = _comment.replaceFirst("").trim().toLowerCase();
+            if (cmnd.equals("new") || cmnd.equals("quit")) {
+                endGame();
+            } else if (Move.isGrammaticalMove(cmnd)) {
+                Move move = Move.mv(cmnd);
+                if (move != null && _board.isLegal(move)) {
+                    if (_board.numMoves() < _plies) {
+                        _pending.add(_board.hashKey());
+                        _pending.add((long) move.packed());
+                    }
+                    _board.makeMove(move);
+                }
+            }
+        }
+        endGame();
+    }
+
+    /** Write the book to the file named FILENAME. */
+    void write(String fileName) throws IOException {
+        List<long[]> records = new ArrayList<>();
+        for (Map.Entry<Long, HashMap<Integer, Integer>> position
+                 : _credits.entrySet()) {
+            for (Map.Entry<Integer, Integer> move
+                     : position.getValue().entrySet()) {
+                if (move.getValue() > 0) {
+                    records.add(new long[] { position.getKey(),
+                                             move.getKey(),
+                                             move.getValue() });
+                }
+            }
+        }
+        records.sort((r0, r1) -> r0[0] != r1[0] ? Long.compare(r0[0], r1[0])
+                     : Long.compare(r1[2], r0[2]));
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            out.writeLong(OpeningBook.MAGIC);
+            out.writeInt(records.size());
+            out.writeInt(_plies);
+            for (long[] record : records) {
+                out.writeLong(record[0]);
+                out.writeInt((int) record[1]);
+                out.writeInt((int) record[2]);
+            }
+        }
+        _records = records.size();
+    }
+
+    /** Return the number of games replayed so far. */
+    int games() {
+        return _games;
+    }
+
+    /** Return the number of distinct positions recorded so far. */
+    int positions() {
+        return _credits.size();
+    }
+
+    /** Return the number of records in the last book written. */
+    int records() {
+        return _records;
+    }
+
+    /** Credit the moves recorded in _pending according to the outcome
+     *  of the game on _board, and start a new game. */
+    private void endGame() {
+        if (_board.numMoves() > 0) {
+            Piece winner = _board.hasMove(_board.turn()) ? _board.winner()
+                : _board.turn().opponent();
+            for (int k = 0; k < _pending.size(); k += 2) {
+                Piece mover = k / 2 % 2 == 0 ? WHITE : BLACK;
+                int credit =
+                    winner == null ? 1 : winner == mover ? 2 : 0;
+                _credits.computeIfAbsent(_pending.get(k),
+                                         key -> new HashMap<>())
+                    .merge((int) (long) _pending.get(k + 1), credit,
+                           Integer::sum);
+            }
+            _games += 1;
+        }
+        _pending.clear();
+        _board.init();
+    }
+
+    /** The number of plies recorded from the start of each game. */
+    private final int _plies;
+    /** The position in the game being replayed. */
+    private final Board _board = new Board();
+    /** The hash keys and moves (alternately) of the opening plies of
+     *  the game being replayed. */
+    private final List<Long> _pending = new ArrayList<>();
+    /** Map from hash keys of positions to the credit of each move
+     *  (packed) played from them. */
+    private final HashMap<Long, HashMap<Integer, Integer>> _credits =
+        new HashMap<>();
+    /** A Matcher whose Pattern matches comments. */
+    private final Matcher _comment = Pattern.compile("#.*").matcher("");
+    /** Number of games replayed. */
+    private int _games;
+    /** Number of records in the last book written. */
+    private int _records;
+}
@@ -3,8 +3,13 @@ package amazons;
 import java.io.PrintStream;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 import static amazons.Utils.*;
@@ -69,6 +74,36 @@ final class Controller {
         }
     }
 
+    /** Play a game from the current position to the end without reading
+     *  input, so that both players must be automated (see the "auto"
+     *  command), and return the winner.  After each move, calls
+     *  OBSERVER.accept(MOVE, NANOS), where NANOS is the time in
+     *  nanoseconds the player took to choose MOVE.  Intended for
+     *  running games without a user, as by Tournament. */
+    Piece playGame(BiConsumer<Move, Long> observer) {
+        _winner = _board.winner();
+        while (_winner == null) {
+            if (!_board.hasMove(_board.turn())) {
+                _winner = _board.turn().opponent();
+                break;
+            }
+            Player player = _board.turn() == WHITE ? _white : _black;
+            long start = System.nanoTime();
+            String command = player.myMove();
+            long time = System.nanoTime() - start;
+            Move move = Move.mv(command);
+            if (move == null || !_board.isLegal(move)) {
+                throw new IllegalStateException(
+                    String.format("%s player made bad move: %s",
+                                  _board.turn().toName(), command));
+            }
+            executeCommand(command);
+            observer.accept(move, time);
+        }
+        stopThinking();
+        return _winner;
+    }
+
     /** Return the current board.  The value returned should not be
      *  modified by the caller. */
     Board board() {
@@ -85,9 +120,74 @@ final class Controller {
 
     /** Re-seed the pseudo-random number generator (PRNG) that supplies randInt
      *  with the value SEED. Identical seeds produce identical sequences.
-     *  Initially, the PRNG is randomly seeded. */
+     *  Initially, the PRNG is randomly seeded.  The current players, and
+     *  automated players created later, are seeded with SEED too (see
+     *  Player.setSeed). */
     void setSeed(long seed) {
         _randGen.setSeed(seed);
+        _seed = seed;
+        for (Player player : new Player[] { _white, _black }) {
+            if (player != null) {
+                player.setSeed(seed);
+            }
+        }
+    }
+
+    /** Return the memory budget, in bytes, for each automated player's
+     *  table of previously searched positions. */
+    long hashSize() {
+        return _hashSize;
+    }
+
+    /** Return the time, in milliseconds, that each automated player
+     *  may spend choosing a move, or 0 if there is no limit. */
+    long timeBudget() {
+        return _timeBudget;
+    }
+
+    /** Return the number of threads each automated player may use to
+     *  search. */
+    int threads() {
+        return _threads;
+    }
+
+    /** Return the number of playouts Monte Carlo players make per move
+     *  when there is no time limit. */
+    int playouts() {
+        return _playouts;
+    }
+
+    /** Return the static evaluator that automated players use to value
+     *  positions. */
+    Evaluator evaluator() {
+        return _evaluator;
+    }
+
+    /** Return true iff automated players that support it should search
+     *  during their opponents' turns (ponder). */
+    boolean ponder() {
+        return _ponder;
+    }
+
+    /** Have automated players ponder iff ON, stopping any pondering now
+     *  in progress if not. */
+    void setPonder(boolean on) {
+        _ponder = on;
+        if (!on) {
+            stopThinking();
+        }
+    }
+
+    /** Return the opening book automated players consult, or null if
+     *  there is none. */
+    OpeningBook book() {
+        return _book;
+    }
+
+    /** Have automated players play from BOOK (null for none) where it
+     *  has moves. */
+    void setBook(OpeningBook book) {
+        _book = book;
     }
 
     /** Return the next line of input, or null if there is no more. First
@@ -113,6 +213,48 @@ final class Controller {
         _reporter.reportNote(format, args);
     }
 
+    /** Report the progress of SIDE's search for a move by calling
+     *  reportProgress(SIDE, DEPTH, BEST, NODES, RATE) on my reporter.
+     *  May be called from any thread. */
+    void reportProgress(Piece side, int depth, Move best, long nodes,
+                        long rate) {
+        _reporter.reportProgress(side, depth, best, nodes, rate);
+    }
+
+    /** Wait until SEARCH, an automated player's search for a move
+     *  running on another thread, is done, or MILLIS milliseconds have
+     *  passed if MILLIS is positive, and return null.  If meanwhile a
+     *  command arrives from the manual players' input (see
+     *  Player.pollCommand), return it at once instead, so that the
+     *  player can abandon the search and commands such as "new" and
+     *  "quit" take effect immediately. */
+    String awaitCommand(Future<?> search, long millis) {
+        long end = System.currentTimeMillis() + millis;
+        while (true) {
+            try {
+                long wait = POLL_MILLIS;
+                if (millis > 0) {
+                    wait = Math.min(wait, end - System.currentTimeMillis());
+                    if (wait <= 0) {
+                        return null;
+                    }
+                }
+                search.get(wait, TimeUnit.MILLISECONDS);
+                return null;
+            } catch (TimeoutException excp) {
+                String command = _manualPlayerTemplate.pollCommand();
+                if (command != null) {
+                    return command;
+                }
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                return "quit";
+            } catch (ExecutionException excp) {
+                return null;
+            }
+        }
+    }
+
     /** Report move by calling reportMove(MOVE) on my reporter. */
     void reportMove(Move move) {
         _reporter.reportMove(move);
@@ -143,15 +285,22 @@ final class Controller {
         new Command("seed\\s+(\\d+)$", this::doSeed),
         new Command("dump$", this::doDump),
         new Command("new$", this::doNew),
+        new Command("hash\\s+(\\d+)$", this::doHash),
+        new Command("stats$", this::doStats),
+        new Command("time\\s+(\\d+)$", this::doTime),
+        new Command("threads\\s+(\\d+)$", this::doThreads),
+        new Command("eval\\s+(mobility|territory)$", this::doEval),
         new Command("manual\\s+(([wW][hH][iI][tT][eE])|"
                 +
                 "([bB][lL][aA][cC][kK]))$", this::doManual),
         new Command("auto\\s+(([wW][hH][iI][tT][eE])|"
                 +
-                "([bB][lL][aA][cC][kK]))$", this::doAuto),
-        new Command("[a-j]([1-9]|10)(-| )*[a-j]{1}([1-9]|10)"
+                "([bB][lL][aA][cC][kK]))(\\s+(ai|mcts))?$", this::doAuto),
+        new Command("playouts\\s+(\\d+)$", this::doPlayouts),
+        new Command("ponder\\s+(on|off)$", this::doPonder),
+        new Command(Square.SQ + "(-| )*" + Square.SQ
                 +
-                "(\\(| )*[a-j]{1}([1-9]|10)\\)*", this::doMove)
+                "(\\(| )*" + Square.SQ + "\\)*", this::doMove)
     };
 
     /** A Matcher whose Pattern matches comments. */
@@ -159,7 +308,7 @@ final class Controller {
 
     /** Check that CMND is one of the valid Amazons commands and execute it, if
      *  so, raising an IllegalArgumentException otherwise. */
-    private void executeCommand(String cmnd) {
+    void executeCommand(String cmnd) {
         if (_logFile != null) {
             _logFile.println(cmnd);
             _logFile.flush();
@@ -181,14 +330,26 @@ final class Controller {
         throw error("Bad command: %s", cmnd);
     }
 
+    /** Have the current players stop any thinking they are doing in
+     *  the background. */
+    private void stopThinking() {
+        for (Player player : new Player[] { _white, _black }) {
+            if (player != null) {
+                player.stopThinking();
+            }
+        }
+    }
+
     /** Command "new". */
     private void doNew(Matcher unused) {
+        stopThinking();
         _board.init();
         _winner = null;
     }
 
     /** Command "quit". */
     private void doQuit(Matcher unused) {
+        stopThinking();
         _playing = false;
     }
 
@@ -201,6 +362,75 @@ final class Controller {
         }
     }
 
+    /** Command "hash N", setting the memory budget for each automated
+     *  player's transposition table to N megabytes, where N is the first
+     *  group of MAT. */
+    private void doHash(Matcher mat) {
+        try {
+            int megabytes = Integer.parseInt(mat.group(1));
+            if (megabytes == 0) {
+                throw error("hash size must be positive");
+            }
+            _hashSize = (long) megabytes * BYTES_PER_MB;
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /** Command "time N", allowing automated players N milliseconds per
+     *  move (with 0 meaning no limit), where N is the first group of
+     *  MAT. */
+    private void doTime(Matcher mat) {
+        try {
+            _timeBudget = Long.parseLong(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /** Command "threads N", allowing automated players to search with N
+     *  threads, where N is the first group of MAT. */
+    private void doThreads(Matcher mat) {
+        try {
+            int threads = Integer.parseInt(mat.group(1));
+            if (threads == 0 || threads > MAX_THREADS) {
+                throw error("number of threads must be between 1 and %d",
+                            MAX_THREADS);
+            }
+            _threads = threads;
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /** Command "ponder on|off", where the first group of MAT is "on" or
+     *  "off". */
+    private void doPonder(Matcher mat) {
+        setPonder(mat.group(1).equals("on"));
+    }
+
+    /** Command "eval E", where E (the first group of MAT) names the
+     *  static evaluator for automated players to use. */
+    private void doEval(Matcher mat) {
+        if (mat.group(1).equals("territory")) {
+            _evaluator = new TerritoryEvaluator();
+        } else {
+            _evaluator = new MobilityEvaluator();
+        }
+    }
+
+    /** Print statistics kept by the current players on standard
+     *  output. */
+    private void doStats(Matcher unused) {
+        for (Player player : new Player[] { _white, _black }) {
+            String stats = player.stats();
+            if (stats != null) {
+                System.out.printf("%s: %s%n", player.myPiece().toName(),
+                                  stats);
+            }
+        }
+    }
+
     /** Dump the contents of the board on standard output. */
     private void doDump(Matcher unused) {
         System.out.printf("===%n%s===%n", _board);
@@ -208,6 +438,7 @@ final class Controller {
 
     /** Manual player. MAT is the matched string. */
     private void doManual(Matcher mat) {
+        stopThinking();
         if (mat.group(1).equalsIgnoreCase("white")) {
             _white = _manualPlayerTemplate.create(WHITE, this);
         } else {
@@ -215,12 +446,41 @@ final class Controller {
         }
     }
 
-    /** AI player. MAT is the matched string. */
+    /** AI player. MAT is the matched string.  Its fifth group, if
+     *  present, selects the kind of automated player: "ai" (the
+     *  default) for game-tree search, or "mcts" for Monte Carlo tree
+     *  search. */
     private void doAuto(Matcher mat) {
-        if (mat.group(1).equalsIgnoreCase("white")) {
-            _white = _autoPlayerTemplate.create(WHITE, this);
+        Player template = _autoPlayerTemplate;
+        if ("mcts".equals(mat.group(5))) {
+            template = _mctsPlayerTemplate;
+        }
+        stopThinking();
+        Piece side =
+            mat.group(1).equalsIgnoreCase("white") ? WHITE : BLACK;
+        Player player = template.create(side, this);
+        if (_seed != null) {
+            player.setSeed(_seed);
+        }
+        if (side == WHITE) {
+            _white = player;
         } else {
-            _black = _autoPlayerTemplate.create(BLACK, this);
+            _black = player;
+        }
+    }
+
+    /** Command "playouts N", where N is the first group of MAT, allowing
+     *  Monte Carlo players N playouts per move when there is no time
+     *  limit. */
+    private void doPlayouts(Matcher mat) {
+        try {
+            int playouts = Integer.parseInt(mat.group(1));
+            if (playouts == 0) {
+                throw error("number of playouts must be positive");
+            }
+            _playouts = playouts;
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
         }
     }
 
@@ -243,6 +503,7 @@ final class Controller {
             throw error("not viable move");
         }
         if (board().winner() != null) {
+            stopThinking();
             if (board().winner().equals(WHITE)) {
                 _winner = WHITE;
                 reportNote("White wins.", _winner);
@@ -267,6 +528,9 @@ final class Controller {
     /** My pseudo-random number generator. */
     private Random _randGen = new Random();
 
+    /** The seed last given to setSeed, or null if there is none. */
+    private Long _seed;
+
     /** Log file, or null if absent. */
     private PrintStream _logFile;
 
@@ -284,7 +548,45 @@ final class Controller {
     /** The current templates for manual and automated players. */
     private Player _autoPlayerTemplate, _manualPlayerTemplate;
 
+    /** The template for automated players using Monte Carlo tree
+     *  search. */
+    private final Player _mctsPlayerTemplate = new MCTSPlayer();
+
     /** Reporter for messages and errors. */
     private Reporter _reporter;
 
+    /** Milliseconds between checks for commands while an automated
+     *  player is searching. */
+    private static final long POLL_MILLIS = 50;
+
+    /** Number of bytes in a megabyte. */
+    private static final long BYTES_PER_MB = 1 << 20;
+
+    /** Memory budget in bytes for each automated player's transposition
+     *  table. */
+    private long _hashSize = AI.DEFAULT_HASH_SIZE;
+
+    /** Milliseconds each automated player may spend per move, or 0 for
+     *  no limit. */
+    private long _timeBudget;
+
+    /** The largest number of threads an automated player may use. */
+    private static final int MAX_THREADS = 256;
+
+    /** Number of threads each automated player uses to search. */
+    private int _threads = 1;
+
+    /** The static evaluator automated players use. */
+    private Evaluator _evaluator = new MobilityEvaluator();
+
+    /** Playouts per move for Monte Carlo players without a time
+     *  limit. */
+    private int _playouts = MCTSPlayer.DEFAULT_PLAYOUTS;
+
+    /** True iff automated players ponder. */
+    private boolean _ponder;
+
+    /** The opening book automated players consult, or null. */
+    private OpeningBook _book;
+
 }
@@ -0,0 +1,376 @@
+package amazons;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static amazons.Piece.*;
+
+/** Decides endgames in which the board has split into regions that each
+ *  hold the queens of only one side.  A region is a connected set
+ *  (under king moves) of empty squares and queens.  Since no queen can
+ *  leave its region or affect another, each side can make exactly as
+ *  many moves as the sum over its regions of the longest sequence of
+ *  moves its queens can make there, and the side to move wins iff that
+ *  number for it is greater than for its opponent.
+ *
+ *  The longest sequence in a region of at most SMALL_REGION empty
+ *  squares is found exactly by search.  The results are memoized in a
+ *  table shared by all Endgames, keyed by the region's shape (its
+ *  squares and queens, translated to the lower-left corner of the
+ *  board), so that each shape is solved only once.  For larger regions,
+ *  the number of empty squares is an upper bound, and the length of a
+ *  sequence found greedily is a lower bound; an endgame is decided
+ *  only when these bounds settle it.
+ *
+ *  Each Endgame has scratch storage, so each thread needs its own.
+ *  @author Kelley
+ */
+class Endgame {
+
+    /** The largest number of empty squares in a region whose moves are
+     *  counted exactly. */
+    static final int SMALL_REGION = 12;
+
+    /** Return the side that will win the game on BOARD, if BOARD is an
+     *  endgame of separate regions that settles it, and otherwise
+     *  null. */
+    Piece winner(Board board) {
+        BitBoard bits = board.bits();
+        long whiteLo = bits.lo(WHITE), whiteHi = bits.hi(WHITE),
+            blackLo = bits.lo(BLACK), blackHi = bits.hi(BLACK);
+        long openLo = bits.emptyLo() | whiteLo | blackLo,
+            openHi = bits.emptyHi() | whiteHi | blackHi;
+        int regions = 0;
+        long restLo = openLo, restHi = openHi;
+        while ((restLo | restHi) != 0) {
+            int seed = restLo != 0 ? Long.numberOfTrailingZeros(restLo)
+                : BitBoard.WORD + Long.numberOfTrailingZeros(restHi);
+            region(seed, openLo, openHi);
+            restLo &= ~_regionLo;
+            restHi &= ~_regionHi;
+            if (((_regionLo & whiteLo) | (_regionHi & whiteHi)) != 0
+                && ((_regionLo & blackLo) | (_regionHi & blackHi)) != 0) {
+                return null;
+            }
+            _regionsLo[regions] = _regionLo;
+            _regionsHi[regions] = _regionHi;
+            regions += 1;
+        }
+        int whiteMin, whiteMax, blackMin, blackMax;
+        whiteMin = whiteMax = blackMin = blackMax = 0;
+        for (int r = 0; r < regions; r += 1) {
+            long regionLo = _regionsLo[r], regionHi = _regionsHi[r];
+            if (((regionLo & whiteLo) | (regionHi & whiteHi)) != 0) {
+                moves(regionLo & ~whiteLo, regionHi & ~whiteHi,
+                      regionLo & whiteLo, regionHi & whiteHi);
+                whiteMin += _min;
+                whiteMax += _max;
+            } else if (((regionLo & blackLo) | (regionHi & blackHi)) != 0) {
+                moves(regionLo & ~blackLo, regionHi & ~blackHi,
+                      regionLo & blackLo, regionHi & blackHi);
+                blackMin += _min;
+                blackMax += _max;
+            }
+        }
+        Piece side = board.turn();
+        int myMin = side == WHITE ? whiteMin : blackMin,
+            myMax = side == WHITE ? whiteMax : blackMax,
+            theirMin = side == WHITE ? blackMin : whiteMin,
+            theirMax = side == WHITE ? blackMax : whiteMax;
+        if (myMin > theirMax) {
+            return side;
+        } else if (myMax <= theirMin) {
+            return side.opponent();
+        }
+        return null;
+    }
+
+    /** Set _regionLo and _regionHi to the mask of the region containing
+     *  square SEED within the squares of the mask OPENLO, OPENHI. */
+    private void region(int seed, long openLo, long openHi) {
+        long regionLo = BitBoard.bitLo(seed), regionHi = BitBoard.bitHi(seed);
+        long frontLo = regionLo, frontHi = regionHi;
+        while ((frontLo | frontHi) != 0) {
+            long nextLo, nextHi;
+            nextLo = nextHi = 0;
+            for (long m = frontLo; m != 0; m &= m - 1) {
+                int k = Long.numberOfTrailingZeros(m);
+                nextLo |= BitBoard.neighborsLo(k);
+                nextHi |= BitBoard.neighborsHi(k);
+            }
+            for (long m = frontHi; m != 0; m &= m - 1) {
+                int k = BitBoard.WORD + Long.numberOfTrailingZeros(m);
+                nextLo |= BitBoard.neighborsLo(k);
+                nextHi |= BitBoard.neighborsHi(k);
+            }
+            frontLo = nextLo & openLo & ~regionLo;
+            frontHi = nextHi & openHi & ~regionHi;
+            regionLo |= frontLo;
+            regionHi |= frontHi;
+        }
+        _regionLo = regionLo;
+        _regionHi = regionHi;
+    }
+
+    /** Set _min and _max to lower and upper bounds on the number of moves
+     *  that the queens in the mask QUEENLO, QUEENHI can make within the
+     *  empty squares in the mask EMPTYLO, EMPTYHI, which together form
+     *  a region. */
+    private void moves(long emptyLo, long emptyHi, long queenLo,
+                       long queenHi) {
+        int n = Long.bitCount(emptyLo) + Long.bitCount(emptyHi);
+        if (n > SMALL_REGION) {
+            _min = greedyMoves(emptyLo, emptyHi, queenLo, queenHi);
+            _max = n;
+            return;
+        }
+        int shift = shift(emptyLo | queenLo, emptyHi | queenHi);
+        Shape shape = new Shape(shiftLo(emptyLo, emptyHi, shift),
+                                shiftHi(emptyHi, shift),
+                                shiftLo(queenLo, queenHi, shift),
+                                shiftHi(queenHi, shift));
+        Integer result = CACHE.get(shape);
+        if (result == null) {
+            result = solve(shape);
+            if (CACHE.size() < CACHE_LIMIT) {
+                CACHE.put(shape, result);
+            }
+        }
+        _min = _max = result;
+    }
+
+    /** Return the number of moves in a sequence of moves by the queens in
+     *  QUEENLO, QUEENHI within the empty squares EMPTYLO, EMPTYHI, in
+     *  which each queen moves to a neighboring square and throws its
+     *  spear back to the square it left.  At each step, the move is to
+     *  the square with the fewest empty neighbors, so that dead ends are
+     *  filled first. */
+    private static int greedyMoves(long emptyLo, long emptyHi,
+                                   long queenLo, long queenHi) {
+        int n = 0;
+        while (true) {
+            int bestFrom = BitBoard.NONE, bestTo = BitBoard.NONE;
+            int bestDegree = Integer.MAX_VALUE;
+            for (int pass = 0; pass < 2; pass += 1) {
+                for (long m = pass == 0 ? queenLo : queenHi; m != 0;
+                     m &= m - 1) {
+                    int q = pass * BitBoard.WORD
+                        + Long.numberOfTrailingZeros(m);
+                    long toLo = BitBoard.neighborsLo(q) & emptyLo,
+                        toHi = BitBoard.neighborsHi(q) & emptyHi;
+                    for (int pass2 = 0; pass2 < 2; pass2 += 1) {
+                        for (long t = pass2 == 0 ? toLo : toHi; t != 0;
+                             t &= t - 1) {
+                            int to = pass2 * BitBoard.WORD
+                                + Long.numberOfTrailingZeros(t);
+                            int degree =
+                                Long.bitCount(BitBoard.neighborsLo(to)
+                                              & emptyLo)
+                                + Long.bitCount(BitBoard.neighborsHi(to)
+                                                & emptyHi);
+                            if (degree < bestDegree) {
+                                bestDegree = degree;
+                                bestFrom = q;
+                                bestTo = to;
+                            }
+                        }
+                    }
+                }
+            }
+            if (bestTo == BitBoard.NONE) {
+                return n;
+            }
+            emptyLo &= ~BitBoard.bitLo(bestTo);
+            emptyHi &= ~BitBoard.bitHi(bestTo);
+            queenLo ^= BitBoard.bitLo(bestFrom) | BitBoard.bitLo(bestTo);
+            queenHi ^= BitBoard.bitHi(bestFrom) | BitBoard.bitHi(bestTo);
+            n += 1;
+        }
+    }
+
+    /** Return the greatest number of moves the queens of SHAPE can make
+     *  within its empty squares. */
+    private int solve(Shape shape) {
+        _scratch.clear();
+        for (int k = 0; k < BitBoard.SQUARES; k += 1) {
+            _scratch.put(SPEAR, k);
+        }
+        for (int pass = 0; pass < 2; pass += 1) {
+            for (long m = pass == 0 ? shape._emptyLo : shape._emptyHi;
+                 m != 0; m &= m - 1) {
+                _scratch.put(EMPTY, pass * BitBoard.WORD
+                             + Long.numberOfTrailingZeros(m));
+            }
+            for (long m = pass == 0 ? shape._queenLo : shape._queenHi;
+                 m != 0; m &= m - 1) {
+                _scratch.put(WHITE, pass * BitBoard.WORD
+                             + Long.numberOfTrailingZeros(m));
+            }
+        }
+        _memo.clear();
+        return solve(shape._emptyLo, shape._emptyHi,
+                     shape._queenLo, shape._queenHi);
+    }
+
+    /** Return the greatest number of moves the queens in QUEENLO, QUEENHI
+     *  can make within the empty squares EMPTYLO, EMPTYHI, which _scratch
+     *  must hold (as white queens and empty squares, with spears
+     *  everywhere else).  Leaves _scratch unchanged. */
+    private int solve(long emptyLo, long emptyHi, long queenLo,
+                      long queenHi) {
+        Shape key = new Shape(emptyLo, emptyHi, queenLo, queenHi);
+        Integer known = _memo.get(key);
+        if (known != null) {
+            return known;
+        }
+        int limit = Long.bitCount(emptyLo) + Long.bitCount(emptyHi);
+        int best = 0;
+        for (int pass = 0; pass < 2 && best < limit; pass += 1) {
+            for (long m = pass == 0 ? queenLo : queenHi;
+                 m != 0 && best < limit; m &= m - 1) {
+                int from = pass * BitBoard.WORD
+                    + Long.numberOfTrailingZeros(m);
+                _scratch.reach(from, BitBoard.NONE);
+                long toLo = _scratch.reachLo(), toHi = _scratch.reachHi();
+                _scratch.put(EMPTY, from);
+                for (int pass2 = 0; pass2 < 2 && best < limit; pass2 += 1) {
+                    for (long t = pass2 == 0 ? toLo : toHi;
+                         t != 0 && best < limit; t &= t - 1) {
+                        int to = pass2 * BitBoard.WORD
+                            + Long.numberOfTrailingZeros(t);
+                        best = Math.max(best, 1 + solveSpears(
+                            emptyLo, emptyHi, queenLo, queenHi, from, to));
+                    }
+                }
+                _scratch.put(WHITE, from);
+            }
+        }
+        _memo.put(key, best);
+        return best;
+    }
+
+    /** Return 1 less than the greatest number of moves the queens in
+     *  QUEENLO, QUEENHI can make within the empty squares EMPTYLO,
+     *  EMPTYHI, starting with a move of the queen on FROM to TO (for
+     *  which _scratch already shows FROM as empty), over all spear
+     *  throws.  Leaves _scratch unchanged. */
+    private int solveSpears(long emptyLo, long emptyHi, long queenLo,
+                            long queenHi, int from, int to) {
+        _scratch.put(WHITE, to);
+        _scratch.reach(to, BitBoard.NONE);
+        long spearLo = _scratch.reachLo(), spearHi = _scratch.reachHi();
+        long nextQueenLo = queenLo ^ BitBoard.bitLo(from) ^ BitBoard.bitLo(to),
+            nextQueenHi = queenHi ^ BitBoard.bitHi(from) ^ BitBoard.bitHi(to);
+        long movedLo = (emptyLo | BitBoard.bitLo(from)) & ~BitBoard.bitLo(to),
+            movedHi = (emptyHi | BitBoard.bitHi(from)) & ~BitBoard.bitHi(to);
+        int limit = Long.bitCount(movedLo) + Long.bitCount(movedHi) - 1;
+        int best = 0;
+        for (int pass = 0; pass < 2 && best < limit; pass += 1) {
+            for (long s = pass == 0 ? spearLo : spearHi;
+                 s != 0 && best < limit; s &= s - 1) {
+                int spear = pass * BitBoard.WORD
+                    + Long.numberOfTrailingZeros(s);
+                _scratch.put(SPEAR, spear);
+                best = Math.max(best, solve(
+                    movedLo & ~BitBoard.bitLo(spear),
+                    movedHi & ~BitBoard.bitHi(spear),
+                    nextQueenLo, nextQueenHi));
+                _scratch.put(EMPTY, spear);
+            }
+        }
+        _scratch.put(EMPTY, to);
+        return best;
+    }
+
+    /** Return the amount by which to shift the square indices of the
+     *  squares in the mask LO, HI so that the lowest row and leftmost
+     *  column they occupy become the first. */
+    private static int shift(long lo, long hi) {
+        int minRow = Board.SIZE, minCol = Board.SIZE;
+        for (int pass = 0; pass < 2; pass += 1) {
+            for (long m = pass == 0 ? lo : hi; m != 0; m &= m - 1) {
+                int k = pass * BitBoard.WORD + Long.numberOfTrailingZeros(m);
+                minRow = Math.min(minRow, k / Board.SIZE);
+                minCol = Math.min(minCol, k % Board.SIZE);
+            }
+        }
+        return minRow * Board.SIZE + minCol;
+    }
+
+    /** Return the low word of the mask LO, HI shifted down by SHIFT
+     *  squares. */
+    private static long shiftLo(long lo, long hi, int shift) {
+        if (shift == 0) {
+            return lo;
+        } else if (shift < BitBoard.WORD) {
+            return (lo >>> shift) | (hi << (BitBoard.WORD - shift));
+        } else {
+            return hi >>> (shift - BitBoard.WORD);
+        }
+    }
+
+    /** Return the high word of the mask whose high word is HI shifted
+     *  down by SHIFT squares. */
+    private static long shiftHi(long hi, int shift) {
+        return shift < BitBoard.WORD ? hi >>> shift : 0;
+    }
+
+    /** A region's empty squares and queens, as masks. */
+    private static final class Shape {
+
+        /** The shape with empty squares EMPTYLO, EMPTYHI and queens
+         *  QUEENLO, QUEENHI. */
+        Shape(long emptyLo, long emptyHi, long queenLo, long queenHi) {
+            _emptyLo = emptyLo;
+            _emptyHi = emptyHi;
+            _queenLo = queenLo;
+            _queenHi = queenHi;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Shape)) {
+                return false;
+            }
+            Shape other = (Shape) obj;
+            return _emptyLo == other._emptyLo && _emptyHi == other._emptyHi
+                && _queenLo == other._queenLo && _queenHi == other._queenHi;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = _emptyLo * HASH_MULTIPLIER + _emptyHi;
+            h = h * HASH_MULTIPLIER + _queenLo;
+            h = h * HASH_MULTIPLIER + _queenHi;
+            return (int) (h ^ (h >>> Integer.SIZE));
+        }
+
+        /** The masks of empty squares and of queens. */
+        private final long _emptyLo, _emptyHi, _queenLo, _queenHi;
+    }
+
+    /** Multiplier used in combining the words of a Shape for hashing. */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /** The most shapes kept in CACHE. */
+    private static final int CACHE_LIMIT = 1 << 20;
+
+    /** The number of moves that can be made in each region shape solved
+     *  so far, shared by all threads. */
+    private static final Map<Shape, Integer> CACHE =
+        new ConcurrentHashMap<>();
+
+    /** Board used in solving regions: the region's squares are empty or
+     *  hold white queens, and all others hold spears. */
+    private final BitBoard _scratch = new BitBoard();
+    /** The results for positions within the region being solved. */
+    private final Map<Shape, Integer> _memo = new HashMap<>();
+    /** The masks of the regions found by winner. */
+    private final long[] _regionsLo = new long[BitBoard.SQUARES],
+        _regionsHi = new long[BitBoard.SQUARES];
+    /** The mask of the region found by the last call to region. */
+    private long _regionLo, _regionHi;
+    /** The bounds found by the last call to moves. */
+    private int _min, _max;
+}
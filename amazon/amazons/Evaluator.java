@@ -0,0 +1,19 @@
+package amazons;
+
+/** A static evaluation function for Amazons positions, giving a
+ *  heuristic value to positions that the AI does not search further.
+ *  Evaluators may keep scratch storage, so each thread needs its own.
+ *  @author Kelley
+ */
+interface Evaluator {
+
+    /** Return a heuristic value for BOARD, which is positive if BOARD
+     *  favors white and negative if it favors black.  The magnitude must
+     *  be less than AI.WINNING_VALUE.  Need not detect finished games. */
+    int score(Board board);
+
+    /** Return a new Evaluator of my concrete type, for use by another
+     *  thread. */
+    Evaluator create();
+
+}
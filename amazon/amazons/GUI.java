@@ -13,6 +13,9 @@ import java.util.concurrent.ArrayBlockingQueue;
  */
 class GUI extends TopLevel implements View, Reporter {
 
+    /** Nodes per knode. */
+    private static final long KILO = 1000;
+
     /** Minimum size of board in pixels. */
     private static final int MIN_SIZE = 500;
 
@@ -71,6 +74,12 @@ class GUI extends TopLevel implements View, Reporter {
         }
     }
 
+    /** Return the next command from our widget or menus if there is one
+     *  waiting, and otherwise null, without waiting. */
+    String pollCommand() {
+        return _pendingCommands.poll();
+    }
+
     @Override
     public void update(Board board) {
         _widget.update(board);
@@ -90,6 +99,15 @@ class GUI extends TopLevel implements View, Reporter {
     public void reportMove(Move unused) {
     }
 
+    @Override
+    public void reportProgress(Piece side, int depth, Move best,
+                               long nodes, long rate) {
+        _widget.setStatus(String.format("%s thinking: depth %d, best %s, "
+                                        + "%d nodes, %d knodes/s",
+                                        side.toName(), depth, best, nodes,
+                                        rate / KILO));
+    }
+
     /** The board widget. */
     private BoardWidget _widget;
 
@@ -27,6 +27,11 @@ class GUIPlayer extends Player implements Reporter {
         return _gui.readCommand();
     }
 
+    @Override
+    String pollCommand() {
+        return _gui.pollCommand();
+    }
+
     @Override
     public void reportError(String fmt, Object... args) {
         _gui.reportError(fmt, args);
@@ -41,6 +46,12 @@ class GUIPlayer extends Player implements Reporter {
     public void reportMove(Move unused) {
     }
 
+    @Override
+    public void reportProgress(Piece side, int depth, Move best,
+                               long nodes, long rate) {
+        _gui.reportProgress(side, depth, best, nodes, rate);
+    }
+
     /** The GUI I use for input. */
     private GUI _gui;
 }
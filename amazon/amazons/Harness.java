@@ -0,0 +1,206 @@
+package amazons;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.LongSupplier;
+
+/** A small harness for micro-benchmarks, in the manner of JMH.  Each
+ *  benchmark is a LongSupplier that performs some operations and returns
+ *  their number.  The harness runs it repeatedly for a number of untimed
+ *  warmup iterations (giving the JIT compiler time to settle), then for
+ *  a number of timed iterations of fixed length, and reports the mean
+ *  over the timed iterations, either of throughput (operations per
+ *  second) or of the time per operation, with the half-width of its
+ *  99.9% confidence interval.  The results can be written out in JSON,
+ *  in the same shape as JMH's JSON output, so that existing tools can
+ *  compare runs.
+ *  @author Kelley
+ */
+final class Harness {
+
+    /** A harness that runs WARMUP warmup iterations and ITERATIONS timed
+     *  iterations of ITERATIONNANOS nanoseconds each. */
+    Harness(int warmup, int iterations, long iterationNanos) {
+        _warmup = warmup;
+        _iterations = iterations;
+        _iterationNanos = iterationNanos;
+    }
+
+    /** Measure the throughput of BENCHMARK, recording the result under
+     *  NAME (the name of the benchmark) with PARAM (a description of
+     *  its parameters, or null) and printing it. */
+    void throughput(String name, String param, LongSupplier benchmark) {
+        measure(name, param, benchmark, false);
+    }
+
+    /** Measure the average time per operation of BENCHMARK, recording
+     *  the result under NAME with PARAM (as for throughput) and printing
+     *  it. */
+    void averageTime(String name, String param, LongSupplier benchmark) {
+        measure(name, param, benchmark, true);
+    }
+
+    /** Write the results recorded so far as JSON to the file named
+     *  FILENAME. */
+    void writeJson(String fileName) throws FileNotFoundException {
+        try (PrintStream out = new PrintStream(fileName)) {
+            out.println("[");
+            for (int k = 0; k < _results.size(); k += 1) {
+                _results.get(k).writeJson(out, this);
+                out.println(k + 1 < _results.size() ? "," : "");
+            }
+            out.println("]");
+        }
+    }
+
+    /** Print the heading of the table of results. */
+    void printHeading() {
+        System.out.printf("%-10s %-12s %5s %16s %14s  %s%n", "benchmark",
+                          "param", "mode", "score", "error", "units");
+    }
+
+    /** Measure BENCHMARK, recording the result under NAME and PARAM.
+     *  The score is the time per operation iff AVERAGE, and the
+     *  throughput otherwise. */
+    private void measure(String name, String param, LongSupplier benchmark,
+                         boolean average) {
+        for (int k = 0; k < _warmup; k += 1) {
+            iteration(benchmark, average);
+        }
+        double[] scores = new double[_iterations];
+        for (int k = 0; k < _iterations; k += 1) {
+            scores[k] = iteration(benchmark, average);
+        }
+        Result result = new Result(name, param, average, scores);
+        _results.add(result);
+        System.out.printf("%-10s %-12s %5s %16.3f %14.3f  %s%n", name,
+                          param == null ? "" : param, result.mode(),
+                          result.score(), result.error(), result.units());
+    }
+
+    /** Run BENCHMARK for at least one call and _iterationNanos
+     *  nanoseconds, returning milliseconds per operation iff AVERAGE and
+     *  operations per second otherwise. */
+    private double iteration(LongSupplier benchmark, boolean average) {
+        long ops = 0;
+        long start = System.nanoTime(), elapsed;
+        do {
+            ops += benchmark.getAsLong();
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < _iterationNanos);
+        if (average) {
+            return elapsed / NANOS_PER_MS / ops;
+        } else {
+            return ops * NANOS_PER_SEC / elapsed;
+        }
+    }
+
+    /** The outcome of measuring one benchmark. */
+    private static final class Result {
+        /** The result of measuring benchmark NAME with parameters PARAM
+         *  (possibly null), which gave SCORES in successive timed
+         *  iterations, of time per operation iff AVERAGE. */
+        Result(String name, String param, boolean average,
+               double[] scores) {
+            _name = name;
+            _param = param;
+            _average = average;
+            _scores = scores;
+        }
+
+        /** Return the JMH name of my mode. */
+        String mode() {
+            return _average ? "avgt" : "thrpt";
+        }
+
+        /** Return the units of my score. */
+        String units() {
+            return _average ? "ms/op" : "ops/s";
+        }
+
+        /** Return the mean of my scores. */
+        double score() {
+            double sum = 0;
+            for (double s : _scores) {
+                sum += s;
+            }
+            return sum / _scores.length;
+        }
+
+        /** Return the half-width of the 99.9% confidence interval for my
+         *  score, using the normal approximation. */
+        double error() {
+            if (_scores.length < 2) {
+                return Double.NaN;
+            }
+            double mean = score(), sum = 0;
+            for (double s : _scores) {
+                sum += (s - mean) * (s - mean);
+            }
+            double stdDev = Math.sqrt(sum / (_scores.length - 1));
+            return Z_999 * stdDev / Math.sqrt(_scores.length);
+        }
+
+        /** Write me as a JSON object to OUT, with the settings of
+         *  HARNESS. */
+        void writeJson(PrintStream out, Harness harness) {
+            out.printf(Locale.ROOT, "  {%n"
+                       + "    \"benchmark\" : \"amazons.Bench.%s\",%n"
+                       + "    \"mode\" : \"%s\",%n"
+                       + "    \"threads\" : 1,%n"
+                       + "    \"warmupIterations\" : %d,%n"
+                       + "    \"measurementIterations\" : %d,%n"
+                       + "    \"measurementTime\" : \"%d ms\",%n",
+                       _name, mode(), harness._warmup, harness._iterations,
+                       (long) (harness._iterationNanos / NANOS_PER_MS));
+            if (_param != null) {
+                out.printf("    \"params\" : { \"param\" : \"%s\" },%n",
+                           _param);
+            }
+            StringBuilder raw = new StringBuilder();
+            for (double s : _scores) {
+                raw.append(raw.length() == 0 ? "" : ", ");
+                raw.append(String.format(Locale.ROOT, "%.6f", s));
+            }
+            out.printf(Locale.ROOT, "    \"primaryMetric\" : {%n"
+                       + "      \"score\" : %.6f,%n"
+                       + "      \"scoreError\" : %s,%n"
+                       + "      \"scoreUnit\" : \"%s\",%n"
+                       + "      \"rawData\" : [ [ %s ] ]%n"
+                       + "    }%n  }",
+                       score(), Double.isNaN(error()) ? "\"NaN\""
+                       : String.format(Locale.ROOT, "%.6f", error()),
+                       units(), raw);
+        }
+
+        /** The name of the benchmark. */
+        private final String _name;
+        /** Its parameters, or null. */
+        private final String _param;
+        /** True iff _scores are times per operation. */
+        private final boolean _average;
+        /** The scores from each timed iteration. */
+        private final double[] _scores;
+    }
+
+    /** The z value for a two-sided 99.9% confidence interval. */
+    private static final double Z_999 = 3.291;
+
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MS = 1e6;
+
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SEC = 1e9;
+
+    /** Number of untimed iterations before measuring. */
+    private final int _warmup;
+    /** Number of timed iterations. */
+    private final int _iterations;
+    /** Minimum length of each iteration in nanoseconds. */
+    private final long _iterationNanos;
+    /** Results measured so far. */
+    private final List<Result> _results = new ArrayList<>();
+}
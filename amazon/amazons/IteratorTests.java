@@ -3,9 +3,12 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 import ucb.junit.textui;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import static amazons.Square.*;
 import static amazons.Piece.*;
@@ -154,6 +157,119 @@ public class IteratorTests {
         assertEquals(Piece.WHITE, b.winner());
     }
 
+    /** Checks that move generation from the occupancy masks agrees with
+     *  a square-by-square walk of the board, to depth 2. */
+    @Test
+    public void testPerft() {
+        Board b = new Board();
+        buildBoard(b, REACHABLEFROMTESTBOARD);
+        assertEquals(arrayPerft(b, 2), perft(b, 2));
+        b.init();
+        assertEquals(2176, perft(b, 1));
+        assertEquals(arrayPerft(b, 2), perft(b, 2));
+    }
+
+    /** Checks that the legal moves generated from the occupancy masks
+     *  are the same as those found by walking the board along random
+     *  games, that hasMove agrees with them, and that undoing the games
+     *  restores the initial board. */
+    @Test
+    public void testRandomGames() {
+        Random rand = new Random(61);
+        Board b = new Board();
+        for (int game = 0; game < 3; game += 1) {
+            b.init();
+            while (true) {
+                Set<Move> expected =
+                    new HashSet<>(arrayMoves(b, b.turn()));
+                List<Move> moves = new ArrayList<>();
+                for (Move m : Utils.iterable(b.legalMoves())) {
+                    assertTrue(b.isLegal(m));
+                    moves.add(m);
+                }
+                assertEquals(expected.size(), moves.size());
+                assertEquals(expected, new HashSet<>(moves));
+                assertEquals(!moves.isEmpty(), b.hasMove(b.turn()));
+                assertEquals(b.countMoves(b.turn().opponent()) > 0,
+                             b.hasMove(b.turn().opponent()));
+                if (moves.isEmpty()) {
+                    break;
+                }
+                b.makeMove(moves.get(rand.nextInt(moves.size())));
+            }
+            while (b.numMoves() > 0) {
+                b.undo();
+            }
+            assertEquals(UnitTest.INIT_BOARD_STATE, b.toString());
+        }
+    }
+
+    /** Return the number of move sequences of length DEPTH from B. */
+    private long perft(Board b, int depth) {
+        long n = 0;
+        for (Move m : Utils.iterable(b.legalMoves())) {
+            if (depth == 1) {
+                n += 1;
+            } else {
+                b.makeMove(m);
+                n += perft(b, depth - 1);
+                b.undo();
+            }
+        }
+        return n;
+    }
+
+    /** Return the number of move sequences of length DEPTH from B, as
+     *  found by arrayMoves. */
+    private long arrayPerft(Board b, int depth) {
+        List<Move> moves = arrayMoves(b, b.turn());
+        if (depth == 1) {
+            return moves.size();
+        }
+        long n = 0;
+        for (Move m : moves) {
+            b.makeMove(m);
+            n += arrayPerft(b, depth - 1);
+            b.undo();
+        }
+        return n;
+    }
+
+    /** Return the legal moves for SIDE on B, found by stepping along
+     *  each direction one square at a time. */
+    private List<Move> arrayMoves(Board b, Piece side) {
+        List<Move> result = new ArrayList<>();
+        for (int k = 0; k < Board.SIZE * Board.SIZE; k += 1) {
+            Square from = Square.sq(k);
+            if (b.get(from) != side) {
+                continue;
+            }
+            for (Square to : arrayReachable(b, from, null)) {
+                for (Square spear : arrayReachable(b, to, from)) {
+                    result.add(Move.mv(from, to, spear));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the squares reachable from FROM on B, treating ASEMPTY
+     *  as empty, found by stepping one square at a time. */
+    private List<Square> arrayReachable(Board b, Square from,
+                                        Square asEmpty) {
+        List<Square> result = new ArrayList<>();
+        for (int dir = 0; dir < 8; dir += 1) {
+            for (int steps = 1; ; steps += 1) {
+                Square to = from.queenMove(dir, steps);
+                if (to == null || (to != asEmpty && b.get(to) != EMPTY)) {
+                    break;
+                }
+                result.add(to);
+            }
+        }
+        return result;
+    }
+
     private void buildBoard(Board b, Piece[][] target) {
         for (int col = 0; col < Board.SIZE; col++) {
             for (int row = Board.SIZE - 1; row >= 0; row--) {
@@ -0,0 +1,555 @@
+package amazons;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static amazons.Piece.*;
+
+/** A Player that chooses moves by Monte Carlo tree search (UCT).  Each
+ *  playout descends a tree of the positions it has seen, choosing moves
+ *  by the UCB1 rule, adds one new position to the tree, and continues
+ *  with random moves from there.  The outcome, a win, loss, or tie, is
+ *  credited to every position on the path.  The move played is the one
+ *  from the root that was tried most often.  Playouts either continue to
+ *  the end of the game or stop after a fixed number of random moves, in
+ *  which case the winner is the side favored by an Evaluator.  The part
+ *  of the tree below the position reached after my move and my
+ *  opponent's reply is kept for my next move.
+ *
+ *  Several threads may make playouts in the same tree at once.  Each
+ *  has its own board and scratch storage.  The statistics in the tree's
+ *  nodes are updated atomically without locks, and only adding a child
+ *  to a node locks that node.  Each thread counts a node it passes
+ *  through as a loss until its playout finishes (a "virtual loss"), so
+ *  that other threads descending at the same time tend to try other
+ *  moves.
+ *  @author Kelley
+ */
+class MCTSPlayer extends Player {
+
+    /** Default number of playouts per move when there is no time
+     *  limit. */
+    static final int DEFAULT_PLAYOUTS = 20000;
+
+    /** Default number of random moves in a playout before it is scored
+     *  by the evaluator. */
+    static final int DEFAULT_PLAYOUT_DEPTH = 6;
+
+    /** A new MCTSPlayer with no piece or controller (intended to produce
+     *  a template). */
+    MCTSPlayer() {
+        this(null, null);
+    }
+
+    /** A new MCTSPlayer playing PIECE under control of CONTROLLER. */
+    MCTSPlayer(Piece piece, Controller controller) {
+        super(piece, controller);
+    }
+
+    @Override
+    Player create(Piece piece, Controller controller) {
+        return new MCTSPlayer(piece, controller);
+    }
+
+    @Override
+    String myMove() {
+        setThreads(_controller.threads());
+        setEvaluator(_controller.evaluator());
+        Board position = new Board(board());
+        int playouts = _controller.playouts();
+        long budget = _controller.timeBudget();
+        _cancelled = false;
+        _search = AI.THINKER.submit(() -> findMove(position, playouts,
+                                                   budget));
+        String command = _controller.awaitCommand(_search, 0);
+        if (command != null) {
+            stopThinking();
+            return command;
+        }
+        Move move = Move.mv(AI.waitFor(_search));
+        _search = null;
+        _controller.reportMove(move);
+        return move.toString();
+    }
+
+    @Override
+    void stopThinking() {
+        if (_search != null) {
+            cancel();
+            AI.waitFor(_search);
+            _search = null;
+        }
+    }
+
+    @Override
+    String stats() {
+        if (_root == null) {
+            return null;
+        }
+        return String.format("last search: %d playouts (%d reused), "
+                             + "%d ms, %.0f playouts/s, %d threads, "
+                             + "%d tree nodes",
+                             _playouts, _reused, _lastTime,
+                             _lastTime == 0 ? 0.0
+                             : 1000.0 * _playouts / _lastTime,
+                             _threads, _treeSize.get());
+    }
+
+    /** End playouts after DEPTH random moves, scoring them with my
+     *  evaluator, or play them to the end of the game if DEPTH is 0. */
+    void setPlayoutDepth(int depth) {
+        _playoutDepth = depth;
+    }
+
+    /** Score playouts that do not reach the end of the game with
+     *  (copies of) EVALUATOR. */
+    void setEvaluator(Evaluator evaluator) {
+        if (evaluator != _evaluator) {
+            _evaluator = evaluator;
+            _workers = null;
+        }
+    }
+
+    /** Return the evaluator with which I score playouts. */
+    Evaluator evaluator() {
+        return _evaluator;
+    }
+
+    /** Make playouts with THREADS threads at once. */
+    void setThreads(int threads) {
+        if (threads != _threads) {
+            _threads = threads;
+            _workers = null;
+            if (_pool != null) {
+                _pool.shutdown();
+                _pool = null;
+            }
+        }
+    }
+
+    /** Seed my random number generators from SEED. */
+    @Override
+    void setSeed(long seed) {
+        _seed = seed;
+        _workers = null;
+    }
+
+    /** Stop the search in progress, if any, as soon as possible.  The
+     *  search returns the best move it has found so far, or 0 if it has
+     *  none. */
+    void cancel() {
+        _cancelled = true;
+    }
+
+    /** Return the number of playouts made in finding the last move. */
+    long playouts() {
+        return _playouts;
+    }
+
+    /** Return a move (packed) for the side to move on BOARD, assuming
+     *  there is a move.  Makes PLAYOUTS playouts or, if BUDGET is
+     *  positive, as many as fit in BUDGET milliseconds, unless cancelled
+     *  first (see cancel), in which case it returns 0 if it has not yet
+     *  tried any move. */
+    int findMove(Board board, int playouts, long budget) {
+        long start = System.nanoTime();
+        if (_workers == null) {
+            _workers = new Worker[_threads];
+            for (int k = 0; k < _threads; k += 1) {
+                _workers[k] = new Worker(_seed == null ? new Random()
+                                         : new Random(_seed + k));
+            }
+        }
+        if (_threads > 1 && _pool == null) {
+            _pool = new ForkJoinPool(_threads);
+        }
+        reuseTree(board);
+        _claimed.set(0);
+        _limit = budget > 0 ? Long.MAX_VALUE : playouts;
+        _deadline = budget > 0 ? start + budget * NANOS_PER_MILLI
+            : Long.MAX_VALUE;
+        _stop = false;
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (Worker worker : _workers) {
+            worker._board.copy(board);
+            tasks.add(worker);
+        }
+        if (_threads == 1) {
+            _workers[0].call();
+        } else {
+            try {
+                for (Future<Void> result : _pool.invokeAll(tasks)) {
+                    result.get();
+                }
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException excp) {
+                throw new IllegalStateException(excp.getCause());
+            }
+        }
+        _playouts = Math.min(_claimed.get(), _limit);
+        _lastTime = (System.nanoTime() - start) / NANOS_PER_MILLI;
+        Node best = null;
+        for (int i = 0; i < _root._numChildren; i += 1) {
+            Node child = _root._children[i];
+            if (best == null || child._visits > best._visits) {
+                best = child;
+            }
+        }
+        return best == null ? 0 : best._move;
+    }
+
+    /** Set _root to the node for BOARD, reusing the tree from my last
+     *  move if BOARD is a continuation of its root position. */
+    private void reuseTree(Board board) {
+        Node node = null;
+        int extra = board.numMoves() - _rootMoves;
+        if (_root != null && extra >= 0) {
+            Board past = _workers[0]._board;
+            past.copy(board);
+            for (int k = 0; k < extra; k += 1) {
+                past.undo();
+            }
+            if (past.hashKey() == _rootKey) {
+                node = _root;
+                for (int k = 0; node != null && k < extra; k += 1) {
+                    node = node.child(board.move(_rootMoves + k));
+                }
+            }
+        }
+        if (node == null) {
+            node = new Node(0, board.turn().opponent(), null);
+        }
+        _treeSize.set(node.size());
+        node._parent = null;
+        _root = node;
+        _rootKey = board.hashKey();
+        _rootMoves = board.numMoves();
+        _reused = node._visits;
+    }
+
+    /** Return true iff another playout should be made, counting it if
+     *  so.  COUNT is the number of playouts the calling thread has made
+     *  so far. */
+    private boolean claimPlayout(long count) {
+        if (_stop || _cancelled) {
+            return false;
+        }
+        if ((count & CLOCK_CHECK_MASK) == 0
+            && System.nanoTime() >= _deadline) {
+            _stop = true;
+            return false;
+        }
+        return _claimed.getAndIncrement() < _limit;
+    }
+
+    /** The state of one thread making playouts. */
+    private class Worker implements Callable<Void> {
+
+        /** A Worker choosing random moves with RANDOM. */
+        Worker(Random random) {
+            _random = random;
+            _eval = _evaluator.create();
+        }
+
+        @Override
+        public Void call() {
+            for (long count = 0; claimPlayout(count); count += 1) {
+                playout();
+            }
+            return null;
+        }
+
+        /** Make one playout from _root on _board, restoring _board
+         *  afterwards. */
+        private void playout() {
+            Board board = _board;
+            int made = 0;
+            Node node = _root;
+            node.addVirtualLoss();
+            while (true) {
+                int[] moves = node._moves;
+                if (moves == null) {
+                    moves = node.expand(board, this);
+                }
+                if (moves.length == 0) {
+                    break;
+                }
+                Node next = null;
+                if (node._numChildren < moves.length
+                    && _treeSize.get() < MAX_NODES) {
+                    next = node.addChild(_random);
+                    if (next != null) {
+                        _treeSize.incrementAndGet();
+                        next.addVirtualLoss();
+                        board.makeMove(next._move);
+                        made += 1;
+                        node = next;
+                        break;
+                    }
+                }
+                next = node.select();
+                if (next == null) {
+                    break;
+                }
+                next.addVirtualLoss();
+                board.makeMove(next._move);
+                made += 1;
+                node = next;
+            }
+
+            Piece winner = null;
+            int ply;
+            for (ply = 0; _playoutDepth == 0 || ply < _playoutDepth;
+                 ply += 1) {
+                Piece side = board.turn();
+                int n = board.queenMoves(side, _queenMoves);
+                if (n == 0) {
+                    winner = side.opponent();
+                    break;
+                }
+                int queenMove = _queenMoves[_random.nextInt(n)];
+                int from = Move.fromIndex(queenMove),
+                    to = Move.toIndex(queenMove);
+                int spears = board.spearThrows(from, to, _spears);
+                board.makeMove(Move.pack(from, to,
+                                         _spears[_random.nextInt(spears)]));
+                made += 1;
+            }
+            if (winner == null && ply == _playoutDepth) {
+                int score = _eval.score(board);
+                winner = score > 0 ? WHITE : score < 0 ? BLACK : null;
+            }
+
+            for (; node != null; node = node._parent) {
+                node.update(winner == null ? 1 : winner == node._mover ? 2
+                            : 0);
+            }
+            for (; made > 0; made -= 1) {
+                board.undo();
+            }
+        }
+
+        /** The board on which I make playouts. */
+        private final Board _board = new Board();
+        /** Scratch space for generating moves. */
+        private int[] _moveBuffer = new int[0];
+        /** Scratch space for queen moves and spear throws in
+         *  playouts. */
+        private final int[] _queenMoves = new int[BitBoard.SQUARES
+                                                  * BitBoard.MAX_REACH],
+            _spears = new int[BitBoard.MAX_REACH];
+        /** Source of random moves. */
+        private final Random _random;
+        /** Scores playouts that stop before the end of the game. */
+        private final Evaluator _eval;
+    }
+
+    /** A position in the search tree. */
+    private static class Node {
+
+        /** The position reached from PARENT by MOVE (packed), made by
+         *  MOVER. */
+        Node(int move, Piece mover, Node parent) {
+            _move = move;
+            _mover = mover;
+            _parent = parent;
+        }
+
+        /** Generate my moves, if no other thread has, where BOARD holds my
+         *  position, using scratch space from WORKER, and return them. */
+        synchronized int[] expand(Board board, Worker worker) {
+            if (_moves == null) {
+                Piece side = _mover.opponent();
+                if (worker._moveBuffer.length < board.moveLimit(side)) {
+                    worker._moveBuffer = new int[board.moveLimit(side)];
+                }
+                int n = board.legalMoves(side, worker._moveBuffer);
+                int[] moves = new int[n];
+                System.arraycopy(worker._moveBuffer, 0, moves, 0, n);
+                _children = new Node[n];
+                _moves = moves;
+            }
+            return _moves;
+        }
+
+        /** Add a child for a move chosen with RANDOM from among my moves
+         *  not yet in the tree, and return it, or return null if all my
+         *  moves are in the tree. */
+        synchronized Node addChild(Random random) {
+            int n = _numChildren;
+            if (n == _moves.length) {
+                return null;
+            }
+            int i = n + random.nextInt(_moves.length - n);
+            int move = _moves[i];
+            _moves[i] = _moves[n];
+            _moves[n] = move;
+            Node child = new Node(move, _mover.opponent(), this);
+            _children[n] = child;
+            _numChildren = n + 1;
+            return child;
+        }
+
+        /** Return my child with the greatest upper confidence bound on
+         *  its value to the side making its move, or null if I have no
+         *  children. */
+        Node select() {
+            double logVisits = Math.log(Math.max(1, _visits));
+            Node best = null;
+            double bestBound = Double.NEGATIVE_INFINITY;
+            for (int i = 0, n = _numChildren; i < n; i += 1) {
+                Node child = _children[i];
+                int visits = child._visits;
+                double bound = visits == 0 ? Double.POSITIVE_INFINITY
+                    : child._points / (2.0 * visits)
+                    + EXPLORATION * Math.sqrt(logVisits / visits);
+                if (bound > bestBound) {
+                    bestBound = bound;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        /** Count a playout through me as lost until it finishes. */
+        void addVirtualLoss() {
+            VISITS.addAndGet(this, VIRTUAL_LOSS);
+        }
+
+        /** Record the end of a playout through me, whose outcome for
+         *  _mover is POINTS (2 for a win, 1 for a tie), replacing its
+         *  virtual loss. */
+        void update(int points) {
+            if (VIRTUAL_LOSS != 1) {
+                VISITS.addAndGet(this, 1 - VIRTUAL_LOSS);
+            }
+            if (points != 0) {
+                POINTS.addAndGet(this, points);
+            }
+        }
+
+        /** Return the number of nodes in the tree rooted at me. */
+        int size() {
+            int n = 1;
+            for (int i = 0; i < _numChildren; i += 1) {
+                n += _children[i].size();
+            }
+            return n;
+        }
+
+        /** Return my child reached by MOVE (packed), or null if it is not
+         *  in the tree. */
+        Node child(int move) {
+            for (int i = 0; i < _numChildren; i += 1) {
+                if (_children[i]._move == move) {
+                    return _children[i];
+                }
+            }
+            return null;
+        }
+
+        /** Atomic updaters for _visits and _points. */
+        private static final AtomicIntegerFieldUpdater<Node>
+            VISITS = AtomicIntegerFieldUpdater.newUpdater(Node.class,
+                                                          "_visits"),
+            POINTS = AtomicIntegerFieldUpdater.newUpdater(Node.class,
+                                                          "_points");
+
+        /** The move that reached this position. */
+        private final int _move;
+        /** The side that made _move. */
+        private final Piece _mover;
+        /** The position from which _move was made, or null at the
+         *  root. */
+        private Node _parent;
+        /** My legal moves, or null if not yet generated.  The first
+         *  _numChildren are those of my children, in order.  Set once,
+         *  after _children. */
+        private volatile int[] _moves;
+        /** My children. */
+        private Node[] _children;
+        /** Number of my children.  Increased only after the new child
+         *  is stored in _children. */
+        private volatile int _numChildren;
+        /** Number of playouts through this position, including those
+         *  still in progress. */
+        private volatile int _visits;
+        /** Outcomes of the finished playouts through this position for
+         *  _mover: 2 for each win and 1 for each tie. */
+        private volatile int _points;
+    }
+
+    /** Weight of the exploration term in the UCB1 rule. */
+    private static final double EXPLORATION = 0.7;
+
+    /** Number of lost playouts by which a playout in progress lowers the
+     *  value of each node on its path. */
+    private static final int VIRTUAL_LOSS = 1;
+
+    /** The most nodes kept in the tree.  Once it is reached, playouts
+     *  continue without adding to the tree. */
+    private static final int MAX_NODES = 1 << 21;
+
+    /** With a time limit, each thread checks the clock whenever the low
+     *  bits of its playout count selected by this mask are 0. */
+    private static final int CLOCK_CHECK_MASK = (1 << 4) - 1;
+
+    /** Nanoseconds per millisecond. */
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /** The root of the search tree, or null if there is none. */
+    private Node _root;
+    /** The hash key of the root position. */
+    private long _rootKey;
+    /** Number of moves made in the game at _root. */
+    private int _rootMoves = -1;
+    /** Number of nodes in the tree. */
+    private final AtomicInteger _treeSize = new AtomicInteger();
+
+    /** Number of playouts claimed by threads in the current search. */
+    private final AtomicLong _claimed = new AtomicLong();
+    /** The number of playouts to make in the current search. */
+    private long _limit;
+    /** Value of System.nanoTime() at which the current search stops. */
+    private long _deadline;
+    /** True iff the current search has run out of time. */
+    private volatile boolean _stop;
+    /** True iff the current search has been cancelled.  Reset by
+     *  myMove before the search starts, so that an early cancellation
+     *  is not lost. */
+    private volatile boolean _cancelled;
+    /** My search for a move, running on AI.THINKER, or null if I am not
+     *  searching. */
+    private Future<Integer> _search;
+
+    /** Number of threads making playouts at once. */
+    private int _threads = 1;
+    /** The state of each thread, or null if they must be created. */
+    private Worker[] _workers;
+    /** The threads used when _threads > 1. */
+    private ForkJoinPool _pool;
+    /** Seed for my random number generators, or null for random
+     *  seeds. */
+    private Long _seed;
+    /** Number of random moves in a playout, or 0 to play to the end. */
+    private int _playoutDepth = DEFAULT_PLAYOUT_DEPTH;
+    /** Template for the evaluators that score playouts that stop before
+     *  the end of the game. */
+    private Evaluator _evaluator = new TerritoryEvaluator();
+
+    /** Number of playouts made in finding the last move. */
+    private long _playouts;
+    /** Number of playouts through the root kept from earlier moves. */
+    private int _reused;
+    /** The time in milliseconds taken to find the last move. */
+    private long _lastTime;
+}
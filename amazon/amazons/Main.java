@@ -15,15 +15,21 @@ import ucb.util.CommandArgs;
  */
 public class Main {
 
-    /** The main program.  ARGS may contain the option --display. */
+    /** The main program.  ARGS may contain the option --display, the
+     *  option --log=FILE (copy all commands to FILE), the option
+     *  --book=FILE (have automated players use the opening book in
+     *  FILE, as built by BookBuilder), and the option --size=N (play on
+     *  an NxN board). */
     public static void main(String... args) {
 
         CommandArgs options =
-            new CommandArgs("--display --log={0,1} --={0,2}", args);
+            new CommandArgs("--display --log={0,1} --book={0,1} "
+                            + "--size={0,1} --={0,2}", args);
         if (!options.ok()) {
-            System.err.println("Usage: java amazons.Main [--display]"
-                               + " [--log=FILE] [INPUT [OUTPUT]]");
-            System.exit(1);
+            usage();
+        }
+        if (options.contains("--size")) {
+            setSize(options.getFirst("--size"));
         }
 
         List<String> files = options.get("--");
@@ -54,6 +60,34 @@ public class Main {
 
     }
 
+    /** Print a usage message and exit. */
+    private static void usage() {
+        System.err.println("Usage: java amazons.Main [--display]"
+                           + " [--log=FILE] [--book=FILE] [--size=N]"
+                           + " [INPUT [OUTPUT]]");
+        System.exit(1);
+    }
+
+    /** Make the board SIZE squares on a side, exiting with a message if
+     *  SIZE is not a valid size.  Must be called before any Board is
+     *  created. */
+    static void setSize(String size) {
+        try {
+            int n = Integer.parseInt(size);
+            if (n >= BoardSize.MIN && n <= BoardSize.MAX) {
+                System.setProperty(BoardSize.PROPERTY, size);
+                if (BoardSize.SIZE == n) {
+                    return;
+                }
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        System.err.printf("Board size must be from %d to %d.%n",
+                          BoardSize.MIN, BoardSize.MAX);
+        System.exit(1);
+    }
+
     /** Return an appropriate Controller as indicated by OPTIONS. */
     private static Controller getController(CommandArgs options) {
         Player manualPlayer;
@@ -83,6 +117,16 @@ public class Main {
             }
         }
 
-        return new Controller(view, log, reporter, manualPlayer, new AI());
+        Controller control =
+            new Controller(view, log, reporter, manualPlayer, new AI());
+        if (options.contains("--book")) {
+            try {
+                control.setBook(OpeningBook.open(options.getFirst("--book")));
+            } catch (IOException | IllegalArgumentException excp) {
+                throw error("Could not open opening book: %s",
+                            excp.getMessage());
+            }
+        }
+        return control;
     }
 }
@@ -0,0 +1,25 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/** An Evaluator that values a position by the difference between the
+ *  numbers of legal moves available to white and to black.
+ *  @author Kelley
+ */
+class MobilityEvaluator implements Evaluator {
+
+    @Override
+    public int score(Board board) {
+        return board.countMoves(WHITE) - board.countMoves(BLACK);
+    }
+
+    @Override
+    public Evaluator create() {
+        return new MobilityEvaluator();
+    }
+
+    @Override
+    public String toString() {
+        return "mobility";
+    }
+}
@@ -1,7 +1,9 @@
 package amazons;
 
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 
 import static amazons.Square.sq;
 import static amazons.Square.SQ;
@@ -37,25 +39,87 @@ final class Move {
         return _spear;
     }
 
-    /** Return the unique Move FROM-TO(SPEAR). */
+    /** Return my packed representation (see pack). */
+    int packed() {
+        return pack(_from.index(), _to.index(), _spear.index());
+    }
+
+    /** Return the move FROM-TO(SPEAR), where FROM, TO, and SPEAR are
+     *  square indices, packed into a single int.  Packed moves are
+     *  used where Move objects would be too costly, as in the
+     *  AI's search. */
+    static int pack(int from, int to, int spear) {
+        return from | (to << SQ_BITS) | (spear << (2 * SQ_BITS));
+    }
+
+    /** Return the index of the square moved from in packed move MOVE. */
+    static int fromIndex(int move) {
+        return move & SQ_MASK;
+    }
+
+    /** Return the index of the square moved to in packed move MOVE. */
+    static int toIndex(int move) {
+        return (move >>> SQ_BITS) & SQ_MASK;
+    }
+
+    /** Return the index of the spear's destination in packed move
+     *  MOVE. */
+    static int spearIndex(int move) {
+        return (move >>> (2 * SQ_BITS)) & SQ_MASK;
+    }
+
+    /** Return the printed form of packed move MOVE, as for
+     *  toString, without finding its Move. */
+    static String toString(int move) {
+        return sq(fromIndex(move)) + "-" + sq(toIndex(move))
+            + "(" + sq(spearIndex(move)) + ")";
+    }
+
+    /** Return the unique Move denoted by packed move MOVE. */
+    static Move mv(int move) {
+        return mv(sq(fromIndex(move)), sq(toIndex(move)),
+                  sq(spearIndex(move)));
+    }
+
+    /** Return the unique Move FROM-TO(SPEAR).  Safe for use by several
+     *  threads at once: a Move is created the first time it is asked
+     *  for, and if two threads race to create it, both get the one that
+     *  is stored first. */
     static Move mv(Square from, Square to, Square spear) {
-        if (MOVES[from.index()][to.index()][spear.index()] == null) {
-            MOVES[from.index()][to.index()][spear.index()] =
-                new Move(from, to, spear);
+        int k = slot(from.index(), to.index(), spear.index());
+        if (k < 0) {
+            return ODD_MOVES.computeIfAbsent(
+                pack(from.index(), to.index(), spear.index()),
+                key -> new Move(from, to, spear));
+        }
+        Move move = MOVES.get(k);
+        if (move == null) {
+            MOVES.compareAndSet(k, null, new Move(from, to, spear));
+            move = MOVES.get(k);
+        }
+        return move;
+    }
+
+    /** Return the index in MOVES of the move FROM-TO(SPEAR), where FROM,
+     *  TO, and SPEAR are square indices, or -1 if FROM-TO or TO-SPEAR
+     *  is not a queen move. */
+    private static int slot(int from, int to, int spear) {
+        int r0 = RANK[from * SQUARES + to], r1 = RANK[to * SQUARES + spear];
+        if (r0 < 0 || r1 < 0) {
+            return -1;
         }
-        return MOVES[from.index()][to.index()][spear.index()];
+        return (from * MAX_REACH + r0) * MAX_REACH + r1;
     }
 
     /** Return the Move denoted by STR, if STR denotes a move with
      *  valid syntax in which the piece move and spear throw are proper
      *  queen moves, and null otherwise. */
     static Move mv(String str) {
-        _moveMatcher.reset(str);
-        if (_moveMatcher.matches()) {
-            int k = _moveMatcher.group(1) != null ? 1 : 4;
-            Square from = sq(_moveMatcher.group(k)),
-                to = sq(_moveMatcher.group(k + 1)),
-                spear = sq(_moveMatcher.group(k + 2));
+        int move = parse(str);
+        if (move != NOT_A_MOVE) {
+            Square from = sq(fromIndex(move)),
+                to = sq(toIndex(move)),
+                spear = sq(spearIndex(move));
             if (from.isQueenMove(to) && to.isQueenMove(spear)) {
                 return mv(from, to, spear);
             }
@@ -66,8 +130,91 @@ final class Move {
     /** Return true iff STR has the right format for a Move, ignoring whether
      *  its piece-move and spear-throw are valid queen moves. */
     static boolean isGrammaticalMove(String str) {
-        _moveMatcher.reset(str);
-        return _moveMatcher.matches();
+        return parse(str) != NOT_A_MOVE;
+    }
+
+    /** Return the move denoted by STR, packed, if all of STR matches
+     *  MOVE_PATTERN, and otherwise NOT_A_MOVE.  Does not check that the
+     *  piece move and spear throw are queen moves.  This is a hand-written
+     *  equivalent of matching MOVE_PATTERN, which is much faster, creates
+     *  no objects, and is safe for use by any number of threads. */
+    static int parse(CharSequence str) {
+        int from = square(str, 0);
+        if (from < 0) {
+            return NOT_A_MOVE;
+        }
+        int k = from >>> SQ_BITS;
+        if (k < str.length() && str.charAt(k) == '-') {
+            int to = square(str, k + 1);
+            if (to < 0) {
+                return NOT_A_MOVE;
+            }
+            k = to >>> SQ_BITS;
+            if (k >= str.length() || str.charAt(k) != '(') {
+                return NOT_A_MOVE;
+            }
+            int spear = square(str, k + 1);
+            if (spear < 0) {
+                return NOT_A_MOVE;
+            }
+            k = spear >>> SQ_BITS;
+            if (k + 1 != str.length() || str.charAt(k) != ')') {
+                return NOT_A_MOVE;
+            }
+            return pack(from & SQ_MASK, to & SQ_MASK, spear & SQ_MASK);
+        }
+        int to = square(str, skipSpaces(str, k));
+        if (to < 0) {
+            return NOT_A_MOVE;
+        }
+        int spear = square(str, skipSpaces(str, to >>> SQ_BITS));
+        if (spear < 0 || spear >>> SQ_BITS != str.length()) {
+            return NOT_A_MOVE;
+        }
+        return pack(from & SQ_MASK, to & SQ_MASK, spear & SQ_MASK);
+    }
+
+    /** If a square (as matched by Square.SQ) starts at position K of STR,
+     *  return its index plus the position just after it shifted left by
+     *  SQ_BITS, and otherwise return -1.  A square may be followed by
+     *  anything, except that a row followed by a digit is read as a
+     *  two-digit row (such as 10) if the board has that many rows. */
+    private static int square(CharSequence str, int k) {
+        if (k < 0 || k + 1 >= str.length()) {
+            return -1;
+        }
+        int col = str.charAt(k) - 'a';
+        int row = str.charAt(k + 1) - '0';
+        if (col < 0 || col >= BoardSize.SIZE || row < 1 || row > 9) {
+            return -1;
+        }
+        k += 2;
+        if (k < str.length() && str.charAt(k) >= '0' && str.charAt(k) <= '9'
+            && row * 10 + str.charAt(k) - '0' <= BoardSize.SIZE) {
+            row = row * 10 + str.charAt(k) - '0';
+            k += 1;
+        }
+        if (row > BoardSize.SIZE) {
+            return -1;
+        }
+        return (k << SQ_BITS) | (col + BoardSize.SIZE * (row - 1));
+    }
+
+    /** Return the position in STR just after the whitespace that starts
+     *  at position K, or -1 if there is none there. */
+    private static int skipSpaces(CharSequence str, int k) {
+        int start = k;
+        while (k < str.length() && isSpace(str.charAt(k))) {
+            k += 1;
+        }
+        return k == start ? -1 : k;
+    }
+
+    /** Return true iff C is a whitespace character, as matched by \s in
+     *  a Pattern. */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\013'
+            || c == '\f' || c == '\r';
     }
 
     @Override
@@ -81,14 +228,57 @@ final class Move {
         _str = String.format("%s-%s(%s)", from, to, spear);
     }
 
-    /** The cache of all Moves created. */
-    private static final Move[][][] MOVES = new Move[100][100][100];
+    /** Value returned by parse for a string that is not a move.  No
+     *  packed move is negative. */
+    static final int NOT_A_MOVE = -1;
+
+    /** Number of bits used for each square index in a packed move. */
+    private static final int SQ_BITS = 7;
+
+    /** Mask for one square index in a packed move. */
+    private static final int SQ_MASK = (1 << SQ_BITS) - 1;
+
+    /** Number of squares. */
+    private static final int SQUARES = BoardSize.SQUARES;
+
+    /** Number of squares that can be reached from a square by a queen
+     *  move on an empty board, at most. */
+    private static final int MAX_REACH = 4 * (BoardSize.SIZE - 1);
+
+    /** RANK[F * SQUARES + T] is the position of square T among the
+     *  squares reachable by a queen move from square F on an empty
+     *  board (taken by direction, then distance), or -1 if F-T is not
+     *  a queen move. */
+    private static final byte[] RANK = new byte[SQUARES * SQUARES];
+
+    static {
+        Arrays.fill(RANK, (byte) -1);
+        for (int from = 0; from < SQUARES; from += 1) {
+            int rank = 0;
+            for (int dir = 0; dir < 8; dir += 1) {
+                for (int to : Square.ray(from, dir)) {
+                    RANK[from * SQUARES + to] = (byte) rank;
+                    rank += 1;
+                }
+            }
+        }
+    }
+
+    /** The cache of all Moves in which the piece move and spear throw
+     *  are queen moves (as all legal moves are), indexed by slot.  Holds
+     *  about an eighth as many entries as one indexed by all triples of
+     *  squares would. */
+    private static final AtomicReferenceArray<Move> MOVES =
+        new AtomicReferenceArray<>(SQUARES * MAX_REACH * MAX_REACH);
+
+    /** The cache of other Moves created (which are never legal), by
+     *  packed representation. */
+    private static final ConcurrentHashMap<Integer, Move> ODD_MOVES =
+        new ConcurrentHashMap<>();
 
     /** The components of a Move. */
     private final Square _from, _to, _spear;
     /** The printed form of a Move. */
     private String _str;
-    /**  A utility Matcher for moves, using MOVE_PATTERN. */
-    private static Matcher _moveMatcher = MOVE_PATTERN.matcher("");
 }
 
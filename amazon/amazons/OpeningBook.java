@@ -0,0 +1,138 @@
+package amazons;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static amazons.Utils.error;
+
+/** A book of opening moves, read from a file built by BookBuilder.
+ *  The file holds a short header followed by fixed-size records, each
+ *  giving a position (by its hash key, as from Board.hashKey), a move
+ *  (packed, as by Move.pack) from that position, and a weight.  The
+ *  records are sorted by key, and those for the same key by decreasing
+ *  weight.  The file is mapped into memory rather than read, so that
+ *  opening a large book is cheap and costs no heap space, and each
+ *  lookup is a binary search that touches only a few of its pages.
+ *  @author Kelley
+ */
+final class OpeningBook {
+
+    /** The first eight bytes of a book file ("AMZBOOK1"). */
+    static final long MAGIC = 0x414d5a424f4f4b31L;
+
+    /** The size in bytes of the header: the magic number, the number
+     *  of records, and the number of plies from the start of a game
+     *  that the book covers. */
+    static final int HEADER_SIZE = 16;
+
+    /** The size in bytes of each record: a long key, an int move, and
+     *  an int weight. */
+    static final int RECORD_SIZE = 16;
+
+    /** A book whose header and records are in DATA. */
+    private OpeningBook(MappedByteBuffer data) {
+        _data = data;
+        if (data.capacity() < HEADER_SIZE || data.getLong(0) != MAGIC) {
+            throw error("not an opening book");
+        }
+        _size = data.getInt(Long.BYTES);
+        _plies = data.getInt(Long.BYTES + Integer.BYTES);
+        if (_size < 0
+            || data.capacity() != HEADER_SIZE + (long) _size * RECORD_SIZE) {
+            throw error("opening book is damaged");
+        }
+    }
+
+    /** Return the book in the file named FILENAME.  Throws an
+     *  IllegalArgumentException if the file is not a book. */
+    static OpeningBook open(String fileName) throws IOException {
+        try (FileChannel channel =
+             FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            return new OpeningBook(
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /** Return the number of records in the book. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of plies from the start of a game that the
+     *  book covers. */
+    int plies() {
+        return _plies;
+    }
+
+    /** Return the total weight of the moves in the book from the
+     *  position whose hash key is KEY (0 if there are none). */
+    int weight(long key) {
+        int total = 0;
+        for (int k = first(key); k < _size && key(k) == key; k += 1) {
+            total += weight(k);
+        }
+        return total;
+    }
+
+    /** Return the move (packed) from the position whose hash key is KEY
+     *  that is selected by PICK, where 0 <= PICK < weight(KEY), each move
+     *  being selected by a number of values of PICK equal to its weight.
+     *  Returns 0 if there is no such move. */
+    int move(long key, int pick) {
+        for (int k = first(key); k < _size && key(k) == key; k += 1) {
+            pick -= weight(k);
+            if (pick < 0) {
+                return move(k);
+            }
+        }
+        return 0;
+    }
+
+    /** Return the move (packed) of greatest weight from the position
+     *  whose hash key is KEY, or 0 if there is none. */
+    int bestMove(long key) {
+        int k = first(key);
+        return k < _size && key(k) == key ? move(k) : 0;
+    }
+
+    /** Return the index of the first record whose key is at least KEY,
+     *  or size() if there is none. */
+    private int first(long key) {
+        int lo = 0, hi = _size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return the key of record K. */
+    private long key(int k) {
+        return _data.getLong(HEADER_SIZE + k * RECORD_SIZE);
+    }
+
+    /** Return the move of record K. */
+    private int move(int k) {
+        return _data.getInt(HEADER_SIZE + k * RECORD_SIZE + Long.BYTES);
+    }
+
+    /** Return the weight of record K. */
+    private int weight(int k) {
+        return _data.getInt(HEADER_SIZE + k * RECORD_SIZE + Long.BYTES
+                            + Integer.BYTES);
+    }
+
+    /** The contents of the book file. */
+    private final MappedByteBuffer _data;
+    /** The number of records in _data. */
+    private final int _size;
+    /** The number of plies the book covers. */
+    private final int _plies;
+}
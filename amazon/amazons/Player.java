@@ -36,6 +36,34 @@ abstract class Player {
      *  is not null. */
     abstract String myMove();
 
+    /** Return a command that has arrived from my input, if there is one
+     *  ready, without waiting; otherwise return null.  The controller
+     *  calls this on the template for manual players while an automated
+     *  player is searching, so that commands can interrupt the search.
+     *  By default, input is never read early. */
+    String pollCommand() {
+        return null;
+    }
+
+    /** Stop any thinking I am doing in the background (for example,
+     *  during my opponent's turn), waiting until it has stopped.  The
+     *  controller calls this before discarding me, and when the game
+     *  ends or restarts.  By default, does nothing. */
+    void stopThinking() {
+    }
+
+    /** Make any random choices I make from now on depend only on SEED
+     *  (and on the positions I am given).  The controller calls this
+     *  when its own generator is seeded.  By default, does nothing. */
+    void setSeed(long seed) {
+    }
+
+    /** Return a description of statistics I keep about my play, or null
+     *  if I keep none. */
+    String stats() {
+        return null;
+    }
+
     /** My Controller. */
     protected Controller _controller;
     /** The Piece I play (WHITE or BLACK). */
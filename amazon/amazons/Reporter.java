@@ -16,5 +16,14 @@ interface Reporter {
     /** Display MOVE as needed. */
     void reportMove(Move move);
 
+    /** Display the progress of SIDE's search for a move, which has
+     *  completed depth DEPTH, finding BEST the best move so far, after
+     *  visiting NODES positions at RATE positions per second.  May be
+     *  called from a thread other than the controller's.  By default,
+     *  does nothing. */
+    default void reportProgress(Piece side, int depth, Move best,
+                                long nodes, long rate) {
+    }
+
 }
 
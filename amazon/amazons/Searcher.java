@@ -0,0 +1,540 @@
+package amazons;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static amazons.Piece.*;
+import static amazons.AI.WINNING_VALUE;
+
+/** One thread's part of an AI's game-tree search.  A Searcher has its own
+ *  copy of the position being searched and its own move buffers, and
+ *  shares only a transposition table with other Searchers, so that
+ *  several Searchers may work on the same search at once, each in its
+ *  own thread.
+ *  @author Kelley
+ */
+class Searcher {
+
+    /** A Searcher that records its results in TABLE and values the
+     *  positions at which it stops searching with EVALUATOR. */
+    Searcher(TranspositionTable table, Evaluator evaluator) {
+        _table = table;
+        _evaluator = evaluator;
+        _board = new Board();
+    }
+
+    /** Return the board I search on.  Only my thread may modify it. */
+    Board board() {
+        return _board;
+    }
+
+    /** Abandon any search in progress, as if it had run out of time,
+     *  once STOP becomes true. */
+    void setStop(AtomicBoolean stop) {
+        _stop = stop;
+    }
+
+    /** Prepare to search until System.nanoTime() passes DEADLINE. */
+    void start(long deadline) {
+        _deadline = deadline;
+        _aborted = false;
+    }
+
+    /** Return true iff my last search ran out of time or was stopped,
+     *  so that its results must be discarded. */
+    boolean aborted() {
+        return _aborted;
+    }
+
+    /** Return the number of positions I have visited since the last call
+     *  to clearNodes. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Reset my count of positions visited. */
+    void clearNodes() {
+        _nodes = 0;
+    }
+
+    /** Find a move from the position on my board and return its value.
+     *  The move should have maximal value or have value > BETA if
+     *  SENSE==1, and minimal value or value < ALPHA if SENSE==-1.
+     *  Searches up to DEPTH levels.  Searching at level 0 simply returns
+     *  a static estimate of the board value, and a position in which
+     *  the side to move has no moves is lost (-WINNING_VALUE for white,
+     *  WINNING_VALUE for black).  Results are recorded in,
+     *  and where possible taken from, my transposition table.  Returns
+     *  0 if the search runs out of time.
+     *
+     *  Moves are tried in the order given by a MovePicker.  When ordering
+     *  is on, this is a principal-variation search: the first move is
+     *  searched with the full window, and each later one first with a
+     *  null window just wide enough to show that it is no better, being
+     *  searched again with the full window only if that fails. */
+    int findMove(int depth, int sense, int alpha, int beta) {
+        _nodes += 1;
+        if ((_nodes & CLOCK_CHECK_MASK) == 0
+            && (System.nanoTime() > _deadline || _stop.get())) {
+            _aborted = true;
+        }
+        if (_aborted) {
+            return 0;
+        }
+        Board board = _board;
+        if (depth == 0 || board.winner() != null) {
+            return staticScore();
+        }
+        int settled = endgameScore();
+        if (settled != 0) {
+            return settled;
+        }
+        long key = board.hashKey();
+        long entry = _table.probe(key);
+        if (entry != 0 && TranspositionTable.depth(entry) >= depth) {
+            int score = TranspositionTable.score(entry);
+            int bound = TranspositionTable.bound(entry);
+            if (bound == TranspositionTable.EXACT
+                || (bound == TranspositionTable.LOWER && score >= beta)
+                || (bound == TranspositionTable.UPPER && score <= alpha)) {
+                _table.recordCutoff();
+                return score;
+            }
+        }
+
+        Piece side = sense == 1 ? WHITE : BLACK;
+        MovePicker picker = picker(depth);
+        picker.start(side, TranspositionTable.move(entry), depth);
+        int alpha0 = alpha, beta0 = beta;
+        int bestVal = sense == 1 ? -WINNING_VALUE : WINNING_VALUE;
+        int bestMove = 0;
+        boolean first = true;
+        for (int next = picker.next(); next != 0; next = picker.next()) {
+            board.makeMove(next);
+            int responseMove;
+            if (first || !_ordering) {
+                responseMove = findMove(depth - 1, -sense, alpha, beta);
+            } else if (sense == 1) {
+                responseMove = findMove(depth - 1, -1, alpha, alpha + 1);
+                if (responseMove > alpha && responseMove < beta
+                    && !_aborted) {
+                    responseMove = findMove(depth - 1, -1, alpha, beta);
+                }
+            } else {
+                responseMove = findMove(depth - 1, 1, beta - 1, beta);
+                if (responseMove < beta && responseMove > alpha
+                    && !_aborted) {
+                    responseMove = findMove(depth - 1, 1, alpha, beta);
+                }
+            }
+            board.undo();
+            first = false;
+            if (_aborted) {
+                return 0;
+            }
+            if (sense == 1 ? responseMove >= bestVal
+                : responseMove <= bestVal) {
+                bestVal = responseMove;
+                bestMove = next;
+                if (sense == 1) {
+                    alpha = Math.max(alpha, responseMove);
+                } else {
+                    beta = Math.min(beta, responseMove);
+                }
+                if (beta <= alpha) {
+                    recordCutoff(next, depth);
+                    break;
+                }
+            }
+        }
+        int bound;
+        if (bestVal <= alpha0) {
+            bound = TranspositionTable.UPPER;
+        } else if (bestVal >= beta0) {
+            bound = TranspositionTable.LOWER;
+        } else {
+            bound = TranspositionTable.EXACT;
+        }
+        _table.store(key, depth, bound, bestVal, bestMove);
+        return bestVal;
+    }
+
+    /** Turn move ordering (and with it, principal-variation search) on
+     *  iff ON.  With ordering off, only the hash move is put first, and
+     *  all moves are searched with the full window. */
+    void setOrdering(boolean on) {
+        _ordering = on;
+    }
+
+    /** Generate moves in two stages iff ON: first the queen moves, and
+     *  then, only when a queen move is reached in the search, its spear
+     *  throws.  Otherwise, all moves are generated at once. */
+    void setSplit(boolean on) {
+        _split = on;
+    }
+
+    /** Prepare my move-ordering tables for a new move: forget the
+     *  killer moves, which belong to the previous position, and age the
+     *  history counts, so that recent experience outweighs older. */
+    void newSearch() {
+        for (int[] killers : _killers) {
+            if (killers != null) {
+                Arrays.fill(killers, 0);
+            }
+        }
+        ageHistory();
+    }
+
+    /** Return the MovePicker for remaining depth DEPTH. */
+    private MovePicker picker(int depth) {
+        if (depth >= _pickers.length) {
+            _pickers = Arrays.copyOf(_pickers, depth + 1);
+        }
+        if (_pickers[depth] == null) {
+            _pickers[depth] = new MovePicker();
+        }
+        return _pickers[depth];
+    }
+
+    /** Return the killer moves for remaining depth DEPTH. */
+    private int[] killers(int depth) {
+        if (depth >= _killers.length) {
+            _killers = Arrays.copyOf(_killers, depth + 1);
+        }
+        if (_killers[depth] == null) {
+            _killers[depth] = new int[KILLERS];
+        }
+        return _killers[depth];
+    }
+
+    /** Swap the move with the greatest score among MOVES[I .. N-1] (whose
+     *  sort keys are SCORES[I .. N-1]) into MOVES[I]. */
+    private static void selectMove(int[] moves, int[] scores, int i,
+                                   int n) {
+        int best = i;
+        for (int j = i + 1; j < n; j += 1) {
+            if (scores[j] > scores[best]) {
+                best = j;
+            }
+        }
+        if (best != i) {
+            int move = moves[i], score = scores[i];
+            moves[i] = moves[best];
+            scores[i] = scores[best];
+            moves[best] = move;
+            scores[best] = score;
+        }
+    }
+
+    /** Record that MOVE (packed) caused a cutoff at remaining depth
+     *  DEPTH, making it a killer move for DEPTH and crediting its queen
+     *  move and spear throw in the history tables. */
+    private void recordCutoff(int move, int depth) {
+        if (!_ordering) {
+            return;
+        }
+        int[] killers = killers(depth);
+        if (killers[0] != move) {
+            killers[1] = killers[0];
+            killers[0] = move;
+        }
+        int from = Move.fromIndex(move), to = Move.toIndex(move),
+            spear = Move.spearIndex(move);
+        int credit = depth * depth;
+        _queenHistory[from * SQUARES + to] += credit;
+        _spearHistory[to * SQUARES + spear] += credit;
+        if (_queenHistory[from * SQUARES + to] > HISTORY_LIMIT
+            || _spearHistory[to * SQUARES + spear] > HISTORY_LIMIT) {
+            ageHistory();
+        }
+    }
+
+    /** Halve all history counts. */
+    private void ageHistory() {
+        for (int k = 0; k < _queenHistory.length; k += 1) {
+            _queenHistory[k] >>= 1;
+            _spearHistory[k] >>= 1;
+        }
+    }
+
+    /** Return the move buffer for searches at remaining depth DEPTH,
+     *  making sure that it can hold all moves of SIDE on my board.
+     *  Buffers are kept between searches, so that once they have grown
+     *  to their working sizes, searching allocates nothing. */
+    int[] moveBuffer(Piece side, int depth) {
+        if (depth >= _moveBuffers.length) {
+            _moveBuffers = Arrays.copyOf(_moveBuffers, depth + 1);
+        }
+        int limit = _board.moveLimit(side);
+        if (_moveBuffers[depth] == null
+            || _moveBuffers[depth].length < limit) {
+            _moveBuffers[depth] = new int[limit];
+        }
+        return _moveBuffers[depth];
+    }
+
+    /** Move MOVE (packed), if it is among the first N entries of MOVES,
+     *  to the front of MOVES. */
+    static void putFirst(int move, int[] moves, int n) {
+        if (move == 0) {
+            return;
+        }
+        for (int i = 0; i < n; i += 1) {
+            if (moves[i] == move) {
+                moves[i] = moves[0];
+                moves[0] = move;
+                return;
+            }
+        }
+    }
+
+    /** Return a heuristic value for my board. */
+    private int staticScore() {
+        Piece winner = _board.winner();
+        if (winner == BLACK) {
+            return -WINNING_VALUE;
+        } else if (winner == WHITE) {
+            return WINNING_VALUE;
+        }
+        int settled = endgameScore();
+        if (settled != 0) {
+            return settled;
+        }
+        return _evaluator.score(_board);
+    }
+
+    /** Return WINNING_VALUE or -WINNING_VALUE if my board is an endgame
+     *  that Endgame shows to be won by white or black, respectively, and
+     *  otherwise 0.  Early in the game, when the board has not yet
+     *  split into separate regions, returns 0 without checking. */
+    private int endgameScore() {
+        if (_board.numMoves() < ENDGAME_START) {
+            return 0;
+        }
+        Piece winner = _endgame.winner(_board);
+        if (winner == WHITE) {
+            return WINNING_VALUE;
+        } else if (winner == BLACK) {
+            return -WINNING_VALUE;
+        }
+        return 0;
+    }
+
+    /** Supplies the moves from a position one at a time, in the order
+     *  in which they are to be searched.  Either all moves are generated
+     *  at the start, or (when _split is true) the queen moves are, and
+     *  the spear throws after each queen move are generated only when
+     *  that queen move is reached, so that a cutoff spares the throws
+     *  after the remaining queen moves.  When _ordering is true, queen
+     *  moves and spear throws are ordered separately, by the history
+     *  tables for each, after the parts of the hash move and killer
+     *  moves.  A MovePicker keeps its buffers from position to
+     *  position. */
+    private class MovePicker {
+
+        /** Prepare to supply the legal moves of SIDE on my board, which
+         *  is searched to remaining depth DEPTH, where HASHMOVE (packed,
+         *  or 0 if none) is the best move recorded for it. */
+        void start(Piece side, int hashMove, int depth) {
+            _hashMove = hashMove;
+            _hashQueen = queenPart(hashMove);
+            _killerMoves = killers(depth);
+            _i = _s = _numSpears = 0;
+            int limit =
+                _split ? _board.queenMoveLimit(side) : _board.moveLimit(side);
+            if (_moves.length < limit) {
+                _moves = new int[limit];
+                _scores = new int[limit];
+            }
+            if (_split) {
+                _n = _board.queenMoves(side, _moves);
+                putFirst(_hashQueen, _moves, _n);
+            } else {
+                _n = _board.legalMoves(side, _moves);
+                putFirst(_hashMove, _moves, _n);
+            }
+            if (_ordering) {
+                for (int i = 0; i < _n; i += 1) {
+                    _scores[i] =
+                        _split ? queenScore(_moves[i]) : score(_moves[i]);
+                }
+            }
+        }
+
+        /** Return the next move (packed), or 0 if there are no more. */
+        int next() {
+            if (!_split) {
+                if (_i >= _n) {
+                    return 0;
+                }
+                if (_ordering && _i < SELECT_LIMIT) {
+                    selectMove(_moves, _scores, _i, _n);
+                }
+                _i += 1;
+                return _moves[_i - 1];
+            }
+            while (_s >= _numSpears) {
+                if (_i >= _n) {
+                    return 0;
+                }
+                if (_ordering && _i < SELECT_LIMIT) {
+                    selectMove(_moves, _scores, _i, _n);
+                }
+                _from = Move.fromIndex(_moves[_i]);
+                _to = Move.toIndex(_moves[_i]);
+                _i += 1;
+                _numSpears = _board.spearThrows(_from, _to, _spears);
+                _s = 0;
+                _orderSpears = _ordering && _i <= SELECT_LIMIT;
+                if (_orderSpears) {
+                    for (int k = 0; k < _numSpears; k += 1) {
+                        _spearScores[k] =
+                            score(Move.pack(_from, _to, _spears[k]));
+                    }
+                } else if (_hashMove != 0
+                           && _moves[_i - 1] == _hashQueen) {
+                    putFirst(Move.spearIndex(_hashMove), _spears,
+                             _numSpears);
+                }
+            }
+            if (_orderSpears && _s < SPEAR_SELECT_LIMIT) {
+                selectMove(_spears, _spearScores, _s, _numSpears);
+            }
+            _s += 1;
+            return Move.pack(_from, _to, _spears[_s - 1]);
+        }
+
+        /** Return the sort key for the complete move MOVE. */
+        private int score(int move) {
+            if (move == _hashMove) {
+                return HASH_SCORE;
+            } else if (move == _killerMoves[0]) {
+                return KILLER_SCORE;
+            } else if (move == _killerMoves[1]) {
+                return KILLER_SCORE - 1;
+            }
+            int to = Move.toIndex(move);
+            int spear = _spearHistory[to * SQUARES + Move.spearIndex(move)];
+            return _split ? spear
+                : _queenHistory[Move.fromIndex(move) * SQUARES + to] + spear;
+        }
+
+        /** Return the sort key for QUEENMOVE, a queen move packed with
+         *  a spear index of 0. */
+        private int queenScore(int queenMove) {
+            if (queenMove == _hashQueen) {
+                return HASH_SCORE;
+            } else if (queenMove == queenPart(_killerMoves[0])) {
+                return KILLER_SCORE;
+            } else if (queenMove == queenPart(_killerMoves[1])) {
+                return KILLER_SCORE - 1;
+            }
+            return _queenHistory[Move.fromIndex(queenMove) * SQUARES
+                                 + Move.toIndex(queenMove)];
+        }
+
+        /** The moves (or queen moves), and their sort keys. */
+        private int[] _moves = new int[0], _scores = new int[0];
+        /** The spear throws (square indices) after the current queen
+         *  move, and their sort keys. */
+        private final int[] _spears = new int[BitBoard.MAX_REACH],
+            _spearScores = new int[BitBoard.MAX_REACH];
+        /** Number of entries in _moves, and index of the next one. */
+        private int _n, _i;
+        /** Number of entries in _spears, and index of the next one. */
+        private int _numSpears, _s;
+        /** True iff the spear throws after the current queen move are
+         *  ordered. */
+        private boolean _orderSpears;
+        /** The from and to squares of the current queen move. */
+        private int _from, _to;
+        /** The hash move, and its queen move. */
+        private int _hashMove, _hashQueen;
+        /** The killer moves for my depth. */
+        private int[] _killerMoves;
+    }
+
+    /** Return the queen move of MOVE (packed), packed with a spear index
+     *  of 0, or 0 if MOVE is 0. */
+    private static int queenPart(int move) {
+        if (move == 0) {
+            return 0;
+        }
+        return Move.pack(Move.fromIndex(move), Move.toIndex(move), 0);
+    }
+
+    /** Number of squares on the board. */
+    private static final int SQUARES = BitBoard.SQUARES;
+
+    /** Number of killer moves kept for each depth. */
+    private static final int KILLERS = 2;
+
+    /** Sort keys for the hash move and the first killer move; they
+     *  exceed any history count. */
+    private static final int HASH_SCORE = Integer.MAX_VALUE,
+        KILLER_SCORE = HASH_SCORE - 1;
+
+    /** History counts are halved when any reaches this limit, keeping
+     *  the sums of two counts below KILLER_SCORE. */
+    private static final int HISTORY_LIMIT = 1 << 28;
+
+    /** Number of moves at each node put in order by selectMove.  The
+     *  rest, reached only at nodes that do not cut off early, are
+     *  searched in the order generated, since selection takes time
+     *  proportional to the number of moves for each move selected. */
+    private static final int SELECT_LIMIT = 16;
+
+    /** When moves are generated in two stages, the number of spear
+     *  throws put in order after each of the first SELECT_LIMIT queen
+     *  moves.  The throws after later queen moves are not ordered. */
+    private static final int SPEAR_SELECT_LIMIT = 4;
+
+    /** Number of moves into a game before positions are checked for
+     *  separate regions: 20 on a 10x10 board, where 72 more are then
+     *  possible, and none on boards too small to hold 72 moves. */
+    private static final int ENDGAME_START =
+        Math.max(0, Board.MAX_MOVES - 72);
+
+    /** The search checks the clock and its stop flag whenever the low
+     *  bits of the node count selected by this mask are 0. */
+    private static final int CLOCK_CHECK_MASK = (1 << 10) - 1;
+
+    /** The position being searched. */
+    private final Board _board;
+    /** Results of previous searches, shared with other Searchers. */
+    private final TranspositionTable _table;
+    /** Static evaluation function for positions at the search
+     *  horizon. */
+    private final Evaluator _evaluator;
+    /** Decides endgames of separate regions. */
+    private final Endgame _endgame = new Endgame();
+    /** Move buffers for each remaining search depth. */
+    private int[][] _moveBuffers = new int[0][];
+    /** The MovePicker for each remaining search depth. */
+    private MovePicker[] _pickers = new MovePicker[0];
+    /** True iff moves are ordered by the heuristics below. */
+    private boolean _ordering = true;
+    /** True iff queen moves and spear throws are generated separately. */
+    private boolean _split;
+    /** Killer moves (packed) for each remaining depth, most recent
+     *  first: moves that recently caused cutoffs at that depth in other
+     *  positions. */
+    private int[][] _killers = new int[0][];
+    /** History counts for queen moves, indexed by the from square times
+     *  SQUARES plus the to square, and for spear throws, indexed by the
+     *  to square times SQUARES plus the spear square.  Each cutoff at
+     *  remaining depth D adds D*D to the counts for its move.  (A table
+     *  over all three squares would need a million entries per
+     *  Searcher.) */
+    private final int[] _queenHistory = new int[SQUARES * SQUARES],
+        _spearHistory = new int[SQUARES * SQUARES];
+    /** Value of System.nanoTime() at which the current search must
+     *  stop. */
+    private long _deadline;
+    /** True iff the current search has run out of time. */
+    private boolean _aborted;
+    /** Becomes true when the current search is to be abandoned. */
+    private AtomicBoolean _stop = new AtomicBoolean();
+    /** Number of positions visited. */
+    private long _nodes;
+}
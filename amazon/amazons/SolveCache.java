@@ -0,0 +1,206 @@
+package amazons;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static amazons.Utils.error;
+
+/** A table of solved positions, kept in a file so that later runs of
+ *  the Solver can reuse it.  The file holds a short header followed by
+ *  a fixed number of 8-byte slots, forming an open-addressed hash table
+ *  keyed by Board.hashKey.  Each slot packs part of a position's key,
+ *  whether the side to move there wins, and the (logarithm of the) work
+ *  it took to find that out.  When the few slots a key may occupy are
+ *  full, the entry that took least work is replaced, so the table's
+ *  size, fixed when the file is created, bounds the memory the Solver
+ *  uses however long it runs.  The file is mapped into memory, and its
+ *  slots are read and written atomically, so any number of threads may
+ *  share a table without locking.
+ *  @author Kelley
+ */
+final class SolveCache implements AutoCloseable {
+
+    /** The first eight bytes of a cache file ("AMZSOLV1"). */
+    static final long MAGIC = 0x414d5a534f4c5631L;
+
+    /** The size in bytes of the header: the magic number, the board
+     *  size, and the number of slots. */
+    static final int HEADER_SIZE = 16;
+
+    /** The size in bytes of a slot. */
+    static final int SLOT_SIZE = Long.BYTES;
+
+    /** The greatest size in bytes of a table. */
+    static final long MAX_BYTES = 1L << 30;
+
+    /** Results of lookup: not in the table, side to move wins, and side
+     *  to move loses. */
+    static final int UNKNOWN = 0, WIN = 1, LOSS = 2;
+
+    /** Return the table in the file named FILENAME, creating it with
+     *  room for BYTES bytes of slots (at most MAX_BYTES) if it does not
+     *  exist.  An existing table keeps its size.  Throws an
+     *  IllegalArgumentException if the file is not a table for boards of
+     *  the current size. */
+    static SolveCache open(String fileName, long bytes) throws IOException {
+        Path path = Paths.get(fileName);
+        boolean exists = Files.exists(path) && Files.size(path) > 0;
+        long slots = Long.highestOneBit(
+            Math.max(PROBES, Math.min(bytes, MAX_BYTES) / SLOT_SIZE));
+        try (FileChannel channel =
+             FileChannel.open(path, StandardOpenOption.CREATE,
+                              StandardOpenOption.READ,
+                              StandardOpenOption.WRITE)) {
+            long size = exists ? channel.size()
+                : HEADER_SIZE + slots * SLOT_SIZE;
+            if (size < HEADER_SIZE || size > HEADER_SIZE + MAX_BYTES) {
+                throw error("not a solver cache");
+            }
+            return new SolveCache(
+                channel.map(FileChannel.MapMode.READ_WRITE, 0, size),
+                !exists);
+        }
+    }
+
+    /** A table whose header and slots are in DATA, which is filled with
+     *  zeros and needs a header iff FRESH. */
+    private SolveCache(MappedByteBuffer data, boolean fresh) {
+        _data = data;
+        long slots = (data.capacity() - HEADER_SIZE) / SLOT_SIZE;
+        if (fresh) {
+            data.putLong(0, MAGIC);
+            data.putInt(Long.BYTES, Board.SIZE);
+            data.putInt(Long.BYTES + Integer.BYTES, (int) slots);
+        } else if (data.getLong(0) != MAGIC) {
+            throw error("not a solver cache");
+        } else if (data.getInt(Long.BYTES) != Board.SIZE) {
+            throw error("solver cache is for %dx%d boards",
+                        data.getInt(Long.BYTES), data.getInt(Long.BYTES));
+        } else if (data.getInt(Long.BYTES + Integer.BYTES) != slots
+                   || Long.bitCount(slots) != 1) {
+            throw error("solver cache is damaged");
+        }
+        _mask = (int) slots - 1;
+        _slots = data;
+    }
+
+    /** Return the number of slots. */
+    int slots() {
+        return _mask + 1;
+    }
+
+    /** Return the number of slots in use. */
+    int used() {
+        int n = 0;
+        for (int k = 0; k <= _mask; k += 1) {
+            if (slot(k) != 0) {
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** Return WIN or LOSS if the table records that the side to move in
+     *  the position with hash key KEY wins or loses, and otherwise
+     *  UNKNOWN. */
+    int lookup(long key) {
+        long check = key & KEY_MASK;
+        for (int p = 0, k = index(key); p < PROBES; p += 1,
+                 k = (k + 1) & _mask) {
+            long entry = slot(k);
+            if ((entry & KEY_MASK) == check) {
+                return (int) (entry & VALUE_MASK);
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /** Record that the side to move in the position with hash key KEY
+     *  wins iff WINS, which took about WORK nodes of search to find.
+     *  The entry goes in KEY's existing slot or an empty one if there
+     *  is one, and otherwise replaces the entry that took least work,
+     *  provided that took no more work than this one. */
+    void store(long key, boolean wins, long work) {
+        long entry = (key & KEY_MASK)
+            | (Math.min(WORK_LIMIT, 63 - Long.numberOfLeadingZeros(work))
+               << VALUE_BITS)
+            | (wins ? WIN : LOSS);
+        int victim = -1;
+        long least = Long.MAX_VALUE;
+        for (int p = 0, k = index(key); p < PROBES; p += 1,
+                 k = (k + 1) & _mask) {
+            long old = slot(k);
+            if (old == 0 || (old & KEY_MASK) == (key & KEY_MASK)) {
+                SLOTS.setOpaque(_slots, offset(k), entry);
+                return;
+            } else if ((old & WORK_MASK) < least) {
+                victim = k;
+                least = old & WORK_MASK;
+            }
+        }
+        if ((entry & WORK_MASK) >= least) {
+            SLOTS.setOpaque(_slots, offset(victim), entry);
+        }
+    }
+
+    /** Write any changes to the file. */
+    @Override
+    public void close() {
+        _data.force();
+    }
+
+    /** Return the first slot that KEY may occupy. */
+    private int index(long key) {
+        return (int) (key >>> Integer.SIZE) & _mask;
+    }
+
+    /** Return the contents of slot K. */
+    private long slot(int k) {
+        return (long) SLOTS.getOpaque(_slots, offset(k));
+    }
+
+    /** Return the position in the file of slot K. */
+    private static int offset(int k) {
+        return HEADER_SIZE + k * SLOT_SIZE;
+    }
+
+    /** Number of consecutive slots in which a key may be found. */
+    private static final int PROBES = 4;
+
+    /** Number of bits of a slot holding the value (WIN or LOSS). */
+    private static final int VALUE_BITS = 2;
+
+    /** Number of bits of a slot holding the logarithm of the work. */
+    private static final int WORK_BITS = 6;
+
+    /** Greatest value of the logarithm of the work. */
+    private static final long WORK_LIMIT = (1 << WORK_BITS) - 1;
+
+    /** Masks for the parts of a slot. */
+    private static final long
+        VALUE_MASK = (1 << VALUE_BITS) - 1,
+        WORK_MASK = WORK_LIMIT << VALUE_BITS,
+        KEY_MASK = -1L << (VALUE_BITS + WORK_BITS);
+
+    /** Atomic access to the slots, as longs in the byte order of the
+     *  header. */
+    private static final VarHandle SLOTS =
+        MethodHandles.byteBufferViewVarHandle(long[].class,
+                                              ByteOrder.BIG_ENDIAN);
+
+    /** The contents of the cache file. */
+    private final MappedByteBuffer _data;
+    /** _data, as the type SLOTS requires. */
+    private final ByteBuffer _slots;
+    /** The number of slots, less one. */
+    private final int _mask;
+}
@@ -0,0 +1,391 @@
+package amazons;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static amazons.Piece.*;
+
+/** Finds the game-theoretic value of positions on small boards (5x5 or
+ *  6x6, say; see Board.SIZE) by searching to the end of the game.  Since
+ *  Amazons has no draws, the search only needs to decide whether the
+ *  side to move wins, and can stop at the first move that shows it
+ *  does.  It tries first the moves that leave the opponent fewest
+ *  replies, stops at endgames of separate regions (which Endgame
+ *  decides), and records each position it solves in a SolveCache, whose
+ *  file later runs reuse.  The moves from the position being solved are
+ *  searched in parallel.  Usage:
+ *
+ *      java amazons.Solver [--size=N] [--threads=T] [--memory=MB]
+ *               [--cache=FILE] [--sample=K] [--plies=P] [--seed=S]
+ *               [MOVE...]
+ *
+ *  solves the position after MOVEs (by default, the initial position)
+ *  on an NxN board (default 10x10, which is far too big) using T
+ *  threads (default, the number of processors) and a cache of MB
+ *  megabytes (default 64) in FILE (default solve-NxN.cache), and
+ *  prints the winner and a winning move.  With --sample=K, it instead
+ *  solves K random positions P plies (default 6) into games from the
+ *  position after MOVEs, using seed S (default 1), and reports how
+ *  often each evaluator favors the side that actually wins, as ground
+ *  truth for tuning the evaluators.
+ *  @author Kelley
+ */
+public class Solver implements AutoCloseable {
+
+    /** Default size in megabytes of a new cache. */
+    static final int DEFAULT_MEMORY = 64;
+
+    /** Default number of plies into a game of sampled positions. */
+    static final int DEFAULT_PLIES = 6;
+
+    /** Solve the position described by ARGS, as in the class comment. */
+    public static void main(String... args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        long memory = DEFAULT_MEMORY;
+        String cacheName = null;
+        int samples = 0, plies = DEFAULT_PLIES;
+        long seed = 1;
+        List<String> moves = new ArrayList<>();
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--size=")) {
+                    Main.setSize(value(arg));
+                } else if (arg.startsWith("--threads=")) {
+                    threads = Integer.parseInt(value(arg));
+                } else if (arg.startsWith("--memory=")) {
+                    memory = Long.parseLong(value(arg));
+                } else if (arg.startsWith("--cache=")) {
+                    cacheName = value(arg);
+                } else if (arg.startsWith("--sample=")) {
+                    samples = Integer.parseInt(value(arg));
+                } else if (arg.startsWith("--plies=")) {
+                    plies = Integer.parseInt(value(arg));
+                } else if (arg.startsWith("--seed=")) {
+                    seed = Long.parseLong(value(arg));
+                } else if (arg.startsWith("--")) {
+                    usage();
+                } else {
+                    moves.add(arg);
+                }
+            }
+        } catch (NumberFormatException excp) {
+            usage();
+        }
+        if (threads <= 0 || memory <= 0 || samples < 0 || plies < 0) {
+            usage();
+        }
+        Board board = new Board();
+        for (String text : moves) {
+            Move move = Move.isGrammaticalMove(text) ? Move.mv(text) : null;
+            if (move == null || !board.isLegal(move)) {
+                System.err.printf("Illegal move: %s%n", text);
+                System.exit(1);
+            }
+            board.makeMove(move);
+        }
+        if (cacheName == null) {
+            cacheName = String.format("solve-%dx%d.cache", Board.SIZE,
+                                      Board.SIZE);
+        }
+        try (SolveCache cache = SolveCache.open(cacheName,
+                                                memory * BYTES_PER_MB);
+             Solver solver = new Solver(cache, threads)) {
+            if (samples > 0) {
+                solver.validate(board, samples, plies, seed, System.out);
+            } else {
+                long start = System.nanoTime();
+                Piece winner = solver.solve(board);
+                double secs = (System.nanoTime() - start) / NANOS_PER_SEC;
+                System.out.printf("%s wins%s.%n",
+                                  winner == WHITE ? "White" : "Black",
+                                  solver.bestMove() == 0 ? ""
+                                  : " with " + Move.toString(
+                                      solver.bestMove()));
+                System.out.printf("%d nodes in %.1f s (%.0f nodes/s); "
+                                  + "cache %d of %d slots used%n",
+                                  solver.nodes(), secs,
+                                  solver.nodes() / Math.max(secs, 1e-9),
+                                  cache.used(), cache.slots());
+            }
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return the part of ARG, an option of the form --NAME=VALUE, after
+     *  the "=". */
+    private static String value(String arg) {
+        return arg.substring(arg.indexOf('=') + 1);
+    }
+
+    /** Print a usage message and exit. */
+    private static void usage() {
+        System.err.println("Usage: java amazons.Solver [--size=N]"
+                           + " [--threads=T] [--memory=MB] [--cache=FILE]"
+                           + " [--sample=K] [--plies=P] [--seed=S]"
+                           + " [MOVE...]");
+        System.exit(1);
+    }
+
+    /** A solver that records positions in CACHE and searches with
+     *  THREADS threads. */
+    Solver(SolveCache cache, int threads) {
+        _cache = cache;
+        _pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "solver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        _idle = new ArrayList<>();
+    }
+
+    /** Return the side that wins the game on BOARD with best play.  If
+     *  the side to move wins, a winning move is searched for even if the
+     *  result is already known, so that bestMove can report it. */
+    Piece solve(Board board) {
+        _bestMove = 0;
+        Piece side = board.turn();
+        Worker root = worker();
+        root._board.copy(board);
+        if (root.known() == SolveCache.LOSS) {
+            release(root);
+            return side.opponent();
+        }
+        int n = root.order(0);
+        long[] moves = Arrays.copyOf(root._order[0], n);
+        release(root);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger winning = new AtomicInteger();
+        List<Future<Long>> results = new ArrayList<>();
+        for (long move : moves) {
+            results.add(_pool.submit(() -> {
+                Worker worker = worker();
+                try {
+                    worker._stop = stop;
+                    worker._board.copy(board);
+                    worker._board.makeMove((int) move);
+                    boolean wins = worker.wins(1);
+                    if (!wins && !stop.get()) {
+                        winning.compareAndSet(0, (int) move);
+                        stop.set(true);
+                    }
+                    return worker._nodes;
+                } finally {
+                    release(worker);
+                }
+            }));
+        }
+        long nodes = 1;
+        try {
+            for (Future<Long> result : results) {
+                nodes += result.get();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted");
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException(excp.getCause());
+        }
+        _nodes += nodes;
+        _bestMove = winning.get();
+        boolean wins = _bestMove != 0;
+        _cache.store(board.hashKey(), wins, nodes);
+        return wins ? side : side.opponent();
+    }
+
+    /** Return a winning move (packed) for the side to move in the
+     *  position last solved, or 0 if it loses. */
+    int bestMove() {
+        return _bestMove;
+    }
+
+    /** Return the total number of positions searched so far. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Solve SAMPLES positions reached by PLIES random moves from BOARD,
+     *  using random numbers seeded with SEED, and print on OUT how often
+     *  each evaluator favors the side that wins. */
+    void validate(Board board, int samples, int plies, long seed,
+                  PrintStream out) {
+        Random random = new Random(seed);
+        Evaluator[] evaluators = {
+            new MobilityEvaluator(), new TerritoryEvaluator()
+        };
+        String[] names = { "mobility", "territory" };
+        int[] agree = new int[evaluators.length];
+        int solved = 0, whiteWins = 0;
+        Board position = new Board();
+        for (int k = 0; k < samples; k += 1) {
+            position.copy(board);
+            int[] moves = new int[position.moveLimit(position.turn())];
+            for (int p = 0; p < plies && position.hasMove(position.turn());
+                 p += 1) {
+                moves = new int[position.moveLimit(position.turn())];
+                int n = position.legalMoves(position.turn(), moves);
+                position.makeMove(moves[random.nextInt(n)]);
+            }
+            Piece winner = solve(position);
+            solved += 1;
+            whiteWins += winner == WHITE ? 1 : 0;
+            for (int e = 0; e < evaluators.length; e += 1) {
+                int score = evaluators[e].score(position);
+                if (score > 0 && winner == WHITE
+                    || score < 0 && winner == BLACK) {
+                    agree[e] += 1;
+                }
+            }
+        }
+        out.printf("%d positions %d plies from the start: white wins "
+                   + "%d%n", solved, board.numMoves() + plies, whiteWins);
+        for (int e = 0; e < evaluators.length; e += 1) {
+            out.printf("%-10s favors the winner in %d (%.1f%%)%n",
+                       names[e], agree[e], 100.0 * agree[e] / solved);
+        }
+        out.printf("%d nodes searched%n", _nodes);
+    }
+
+    /** Stop my threads. */
+    @Override
+    public void close() {
+        _pool.shutdownNow();
+    }
+
+    /** Return a Worker not in use by another thread. */
+    private synchronized Worker worker() {
+        if (_idle.isEmpty()) {
+            return new Worker();
+        }
+        Worker worker = _idle.remove(_idle.size() - 1);
+        worker._nodes = 0;
+        return worker;
+    }
+
+    /** Make WORKER available for reuse. */
+    private synchronized void release(Worker worker) {
+        worker._stop = null;
+        _idle.add(worker);
+    }
+
+    /** The state of one thread's search. */
+    private class Worker {
+
+        /** Return true iff the side to move on _board wins.  PLY is the
+         *  number of moves made on _board since the search started.
+         *  Returns false without recording anything if _stop is set. */
+        boolean wins(int ply) {
+            _nodes += 1;
+            int known = known();
+            if (known != SolveCache.UNKNOWN) {
+                return known == SolveCache.WIN;
+            }
+            long start = _nodes;
+            int n = order(ply);
+            boolean result = false;
+            for (int k = 0; k < n && !result; k += 1) {
+                if (_stop != null && _stop.get()) {
+                    return false;
+                }
+                _board.makeMove((int) _order[ply][k]);
+                result = !wins(ply + 1);
+                _board.undo();
+            }
+            if (_stop == null || !_stop.get()) {
+                _cache.store(_board.hashKey(), result, _nodes - start + 1);
+            }
+            return result;
+        }
+
+        /** Return WIN or LOSS if the side to move on _board is known to
+         *  win or lose without search, and otherwise UNKNOWN. */
+        int known() {
+            Piece side = _board.turn();
+            if (!_board.hasMove(side)) {
+                return SolveCache.LOSS;
+            } else if (!_board.hasMove(side.opponent())) {
+                return SolveCache.WIN;
+            }
+            int cached = _cache.lookup(_board.hashKey());
+            if (cached != SolveCache.UNKNOWN) {
+                return cached;
+            }
+            Piece winner = _endgame.winner(_board);
+            if (winner != null) {
+                return winner == side ? SolveCache.WIN : SolveCache.LOSS;
+            }
+            return SolveCache.UNKNOWN;
+        }
+
+        /** Store the legal moves on _board in _order[PLY], those that
+         *  leave the opponent fewest replies first, and return their
+         *  number.  A move after which the opponent is known to lose
+         *  comes before all others. */
+        int order(int ply) {
+            Piece side = _board.turn(), opponent = side.opponent();
+            if (_moves.length < _board.moveLimit(side)) {
+                _moves = new int[_board.moveLimit(side)];
+            }
+            int n = _board.legalMoves(side, _moves);
+            if (_order[ply] == null || _order[ply].length < n) {
+                _order[ply] = new long[Math.max(n, _moves.length)];
+            }
+            long[] order = _order[ply];
+            for (int k = 0; k < n; k += 1) {
+                _board.makeMove(_moves[k]);
+                long replies;
+                if (_cache.lookup(_board.hashKey()) == SolveCache.LOSS) {
+                    replies = -1;
+                } else {
+                    replies = _board.countMoves(opponent);
+                }
+                _board.undo();
+                order[k] = (replies << Integer.SIZE) | _moves[k];
+            }
+            Arrays.sort(order, 0, n);
+            return n;
+        }
+
+        /** The position being searched. */
+        private final Board _board = new Board();
+        /** Decides endgames of separate regions. */
+        private final Endgame _endgame = new Endgame();
+        /** Moves (packed) at each ply, in the order searched, each with
+         *  its sort key in its high 32 bits. */
+        private final long[][] _order = new long[Board.MAX_MOVES + 1][];
+        /** Scratch space for move generation. */
+        private int[] _moves = new int[0];
+        /** Number of positions searched. */
+        private long _nodes;
+        /** Set when the search is to stop, or null. */
+        private AtomicBoolean _stop;
+    }
+
+    /** Bytes per megabyte. */
+    private static final long BYTES_PER_MB = 1 << 20;
+
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SEC = 1e9;
+
+    /** The table of solved positions. */
+    private final SolveCache _cache;
+    /** Runs the searches of the moves from the position being solved. */
+    private final ExecutorService _pool;
+    /** Workers not in use. */
+    private final List<Worker> _idle;
+    /** The winning move found by the last solve, or 0. */
+    private int _bestMove;
+    /** Total number of positions searched. */
+    private long _nodes;
+}
@@ -7,13 +7,17 @@ import java.util.List;
 import static amazons.Utils.*;
 
 /** Represents a position on an Amazons board.  Positions are numbered
- *  from 0 (lower-left corner) to 99 (upper-right corner).  Squares
+ *  from 0 (lower-left corner) to BoardSize.SIZE * BoardSize.SIZE - 1
+ *  (upper-right corner), row by row.  Squares
  *  are immutable and unique: there is precisely one square created for
  *  each distinct position.  Clients create squares using the factory method
  *  sq, not the constructor.  Because there is a unique Square object for each
  *  position, you can freely use the cheap == operator (rather than the
  *  .equals method) to compare Squares, and the program does not waste time
- *  creating the same square over and over again.
+ *  creating the same square over and over again.  The rays of squares in
+ *  each direction from each square, and the direction of each queen move,
+ *  are likewise computed once, so that queenMove, isQueenMove, and
+ *  direction are table lookups.
  *  @author Kelley
  */
 final class Square {
@@ -22,8 +26,9 @@ final class Square {
      *  a3). For convenience, it is in parentheses to make it a
      *  group.  This subpattern is intended to be incorporated into
      *  other pattern that contain square designations (such as
-     *  patterns for moves). */
-    static final String SQ = "([a-j](?:[1-9]|10))";
+     *  patterns for moves).  On a 10x10 board, it is
+     *  ([a-j](?:[1-9]|10)). */
+    static final String SQ = squarePattern(BoardSize.SIZE);
 
     /** Return my row position, where 0 is the top row. Use for Board rep. */
     int row() {
@@ -40,24 +45,15 @@ final class Square {
         return _col;
     }
 
-    /** Return my index position (0-99).  0 represents square a1, and 99
-     *  is square j10. */
+    /** Return my index position (0 to BoardSize.SIZE * BoardSize.SIZE - 1).  0
+     *  represents square a1, and 99 is square j10 on a 10x10 board. */
     int index() {
         return _index;
     }
 
     /** Return true iff THIS - TO is a valid queen move. */
     boolean isQueenMove(Square to) {
-        if (to == null) {
-            return false;
-        } else {
-            boolean validCol = this.col() == to.col();
-            boolean validRow = this.row() == to.row();
-            boolean validDiag = Math.abs(this.col() - to.col())
-                    == Math.abs(this.row() - to.row());
-
-            return this != to && (validCol || validRow || validDiag);
-        }
+        return to != null && DIRECTIONS[_index * SQUARE_COUNT + to._index] >= 0;
     }
 
     /** Definitions of direction for queenMove.  DIR[k] = (dcol, drow)
@@ -78,50 +74,29 @@ final class Square {
     Square queenMove(int dir, int steps) {
         if (dir > 7 || dir < 0) {
             return null;
+        } else if (steps < 0) {
+            return queenMove((dir + 4) % 8, -steps);
+        } else if (steps == 0) {
+            return this;
         } else {
-            int[] direc = DIR[dir];
-            int x = (direc[1] * steps) + this.rowReverse(),
-                    y = (direc[0] * steps) + this.col();
-            if (x > 9 || y > 9 || x < 0 || y < 0) {
-                return null;
-            } else {
-                return Square.sq(y, x);
-            }
+            int[] ray = RAYS[_index * 8 + dir];
+            return steps <= ray.length ? SQUARES[ray[steps - 1]] : null;
         }
     }
 
+    /** Return the indices of the squares in direction DIR (as for
+     *  queenMove) from the square with index INDEX, nearest first, up to
+     *  the edge of the board.  The result is shared, and must not be
+     *  modified. */
+    static int[] ray(int index, int dir) {
+        return RAYS[index * 8 + dir];
+    }
+
     /** Return the direction (an int as defined in the documentation
      *  for queenMove) of the queen move THIS-TO. */
     int direction(Square to) {
         assert isQueenMove(to);
-        int yChange = to.row() - this.row();
-        int xChange = to.col() - this.col();
-        if (xChange == 0 || yChange == 0) {
-            if (yChange == 0) {
-                if (xChange > 0) {
-                    return 2;
-                }
-                return 6;
-            } else if (xChange == 0) {
-                if (yChange > 0) {
-                    return 4;
-                }
-                return 0;
-            }
-        } else if (Math.abs(xChange) == Math.abs(yChange)) {
-            if (xChange > 0) {
-                if (yChange > 0) {
-                    return 3;
-                }
-                return 1;
-            } else {
-                if (yChange > 0) {
-                    return 5;
-                }
-                return 7;
-            }
-        }
-        return 0;
+        return Math.max(0, DIRECTIONS[_index * SQUARE_COUNT + to._index]);
     }
 
     @Override
@@ -131,7 +106,8 @@ final class Square {
 
     /** Return true iff COL ROW is a legal square. */
     static boolean exists(int col, int row) {
-        return row >= 0 && col >= 0 && row < Board.SIZE && col < Board.SIZE;
+        return row >= 0 && col >= 0
+            && row < BoardSize.SIZE && col < BoardSize.SIZE;
     }
 
     /** Return the (unique) Square denoting COL ROW. */
@@ -139,7 +115,7 @@ final class Square {
         if (!exists(row, col)) {
             throw error("row or column out of bounds");
         }
-        return sq(col + 10 * row);
+        return sq(col + BoardSize.SIZE * row);
     }
 
     /** Return the (unique) Square denoting the position with index INDEX. */
@@ -164,6 +140,20 @@ final class Square {
         return sq(split[0], split[1]);
     }
 
+    /** Return the regular expression for a square designation on a
+     *  board with SIZE squares on a side, as for SQ. */
+    static String squarePattern(int size) {
+        String rows;
+        if (size <= 9) {
+            rows = "[1-" + size + "]";
+        } else if (size == 10) {
+            rows = "(?:[1-9]|10)";
+        } else {
+            rows = "(?:[1-9]|1[0-" + (size - 10) + "])";
+        }
+        return String.format("([a-%c]%s)", (char) ('a' + size - 1), rows);
+    }
+
     /** Return an iterator over all Squares. */
     static Iterator<Square> iterator() {
         return SQUARE_LIST.iterator();
@@ -171,26 +161,55 @@ final class Square {
 
     /** Return the Square with index INDEX. */
     private Square(int index) {
-        alph  = "abcdefghij";
+        alph  = "abcdefghijk";
         _index = index;
-        _row = Math.abs(index / 10 - 9);
-        _rowRev = index / 10;
-        _col = index % 10;
+        _row = BoardSize.SIZE - 1 - index / BoardSize.SIZE;
+        _rowRev = index / BoardSize.SIZE;
+        _col = index % BoardSize.SIZE;
         char letter = (alph.charAt(_col));
-        _str = String.format("%s%d", letter, index / 10 + 1);
+        _str = String.format("%s%d", letter, _rowRev + 1);
     }
 
     /** The cache of all created squares, by index. */
     private static final Square[] SQUARES =
-        new Square[Board.SIZE * Board.SIZE];
+        new Square[BoardSize.SQUARES];
 
     /** SQUARES viewed as a List. */
     private static final List<Square> SQUARE_LIST = Arrays.asList(SQUARES);
 
+    /** Number of squares. */
+    private static final int SQUARE_COUNT = BoardSize.SQUARES;
+
+    /** RAYS[8 * K + D] holds the indices of the squares in direction D
+     *  from the square with index K, nearest first. */
+    private static final int[][] RAYS = new int[SQUARE_COUNT * 8][];
+
+    /** DIRECTIONS[F * SQUARE_COUNT + T] is the direction of the queen
+     *  move from the square with index F to that with index T, or -1 if
+     *  there is no such move. */
+    private static final byte[] DIRECTIONS =
+        new byte[SQUARE_COUNT * SQUARE_COUNT];
+
     static {
-        for (int i = Board.SIZE * Board.SIZE - 1; i >= 0; i -= 1) {
+        for (int i = BoardSize.SQUARES - 1; i >= 0; i -= 1) {
             SQUARES[i] = new Square(i);
         }
+        Arrays.fill(DIRECTIONS, (byte) -1);
+        int[] ray = new int[BoardSize.SIZE];
+        for (int from = 0; from < SQUARE_COUNT; from += 1) {
+            for (int dir = 0; dir < 8; dir += 1) {
+                int n = 0;
+                for (int col = from % BoardSize.SIZE + DIR[dir][0],
+                         row = from / BoardSize.SIZE + DIR[dir][1];
+                     exists(col, row);
+                     col += DIR[dir][0], row += DIR[dir][1]) {
+                    ray[n] = col + BoardSize.SIZE * row;
+                    DIRECTIONS[from * SQUARE_COUNT + ray[n]] = (byte) dir;
+                    n += 1;
+                }
+                RAYS[from * 8 + dir] = Arrays.copyOf(ray, n);
+            }
+        }
     }
 
     /** My index position. */
@@ -0,0 +1,175 @@
+package amazons;
+
+import java.util.Arrays;
+
+import static amazons.Piece.*;
+
+/** An Evaluator that estimates how much of the board each side controls.
+ *  For each side, it finds the least number of queen moves, and the
+ *  least number of king moves, that one of its queens needs to reach
+ *  each empty square (by breadth-first search over the occupancy
+ *  masks).  An empty square counts as territory for the side that can
+ *  reach it sooner, with a small bonus to the side to move when both
+ *  need the same number of moves.  The value combines territory by
+ *  queen distance, territory by king distance, and the difference in
+ *  the numbers of squares the two sides' queens can reach in one move.
+ *  All scratch storage is allocated once, so evaluation allocates
+ *  nothing.
+ *  @author Kelley
+ */
+class TerritoryEvaluator implements Evaluator {
+
+    @Override
+    public int score(Board board) {
+        BitBoard bits = board.bits();
+        queenDistances(bits, WHITE, _queenWhite);
+        queenDistances(bits, BLACK, _queenBlack);
+        kingDistances(bits, WHITE, _kingWhite);
+        kingDistances(bits, BLACK, _kingBlack);
+        int tie = board.turn() == WHITE ? TIE : -TIE;
+        int queenTerritory, kingTerritory;
+        queenTerritory = kingTerritory = 0;
+        long emptyLo = bits.emptyLo(), emptyHi = bits.emptyHi();
+        for (long m = emptyLo; m != 0; m &= m - 1) {
+            int k = Long.numberOfTrailingZeros(m);
+            queenTerritory += owner(_queenWhite[k], _queenBlack[k], tie);
+            kingTerritory += owner(_kingWhite[k], _kingBlack[k], tie);
+        }
+        for (long m = emptyHi; m != 0; m &= m - 1) {
+            int k = BitBoard.WORD + Long.numberOfTrailingZeros(m);
+            queenTerritory += owner(_queenWhite[k], _queenBlack[k], tie);
+            kingTerritory += owner(_kingWhite[k], _kingBlack[k], tie);
+        }
+        int mobility = mobility(bits, WHITE) - mobility(bits, BLACK);
+        return QUEEN_WEIGHT * queenTerritory + KING_WEIGHT * kingTerritory
+            + MOBILITY_WEIGHT * mobility;
+    }
+
+    @Override
+    public Evaluator create() {
+        return new TerritoryEvaluator();
+    }
+
+    @Override
+    public String toString() {
+        return "territory";
+    }
+
+    /** Return the contribution to territory of a square that white can
+     *  reach in WHITE moves and black in BLACK moves, where TIE is the
+     *  contribution when both need the same (finite) number. */
+    private static int owner(int white, int black, int tie) {
+        if (white < black) {
+            return UNIT;
+        } else if (black < white) {
+            return -UNIT;
+        } else if (white != UNREACHABLE) {
+            return tie;
+        } else {
+            return 0;
+        }
+    }
+
+    /** Return the total number of squares reachable in one queen move by
+     *  the queens of SIDE on BITS. */
+    private int mobility(BitBoard bits, Piece side) {
+        int queens = bits.squares(side, _queens);
+        int n = 0;
+        for (int q = 0; q < queens; q += 1) {
+            n += bits.countReachable(_queens[q], BitBoard.NONE);
+        }
+        return n;
+    }
+
+    /** Set DIST[K] to the least number of queen moves needed by a queen
+     *  of SIDE on BITS to reach each empty square K, or UNREACHABLE if
+     *  there is no way to do so. */
+    private void queenDistances(BitBoard bits, Piece side, int[] dist) {
+        Arrays.fill(dist, UNREACHABLE);
+        long frontLo = bits.lo(side), frontHi = bits.hi(side);
+        long seenLo = frontLo, seenHi = frontHi;
+        for (int d = 1; (frontLo | frontHi) != 0; d += 1) {
+            long nextLo, nextHi;
+            nextLo = nextHi = 0;
+            for (long m = frontLo; m != 0; m &= m - 1) {
+                bits.reach(Long.numberOfTrailingZeros(m), BitBoard.NONE);
+                nextLo |= bits.reachLo();
+                nextHi |= bits.reachHi();
+            }
+            for (long m = frontHi; m != 0; m &= m - 1) {
+                bits.reach(BitBoard.WORD + Long.numberOfTrailingZeros(m),
+                           BitBoard.NONE);
+                nextLo |= bits.reachLo();
+                nextHi |= bits.reachHi();
+            }
+            frontLo = nextLo & ~seenLo;
+            frontHi = nextHi & ~seenHi;
+            seenLo |= frontLo;
+            seenHi |= frontHi;
+            mark(dist, frontLo, frontHi, d);
+        }
+    }
+
+    /** Set DIST[K] to the least number of king moves needed by a queen
+     *  of SIDE on BITS to reach each empty square K, or UNREACHABLE if
+     *  there is no way to do so. */
+    private void kingDistances(BitBoard bits, Piece side, int[] dist) {
+        Arrays.fill(dist, UNREACHABLE);
+        long emptyLo = bits.emptyLo(), emptyHi = bits.emptyHi();
+        long frontLo = bits.lo(side), frontHi = bits.hi(side);
+        for (int d = 1; (frontLo | frontHi) != 0; d += 1) {
+            long nextLo, nextHi;
+            nextLo = nextHi = 0;
+            for (long m = frontLo; m != 0; m &= m - 1) {
+                int k = Long.numberOfTrailingZeros(m);
+                nextLo |= BitBoard.neighborsLo(k);
+                nextHi |= BitBoard.neighborsHi(k);
+            }
+            for (long m = frontHi; m != 0; m &= m - 1) {
+                int k = BitBoard.WORD + Long.numberOfTrailingZeros(m);
+                nextLo |= BitBoard.neighborsLo(k);
+                nextHi |= BitBoard.neighborsHi(k);
+            }
+            frontLo = nextLo & emptyLo;
+            frontHi = nextHi & emptyHi;
+            emptyLo &= ~frontLo;
+            emptyHi &= ~frontHi;
+            mark(dist, frontLo, frontHi, d);
+        }
+    }
+
+    /** Set DIST[K] to D for each square K in the mask whose low and high
+     *  words are LO and HI. */
+    private static void mark(int[] dist, long lo, long hi, int d) {
+        for (long m = lo; m != 0; m &= m - 1) {
+            dist[Long.numberOfTrailingZeros(m)] = d;
+        }
+        for (long m = hi; m != 0; m &= m - 1) {
+            dist[BitBoard.WORD + Long.numberOfTrailingZeros(m)] = d;
+        }
+    }
+
+    /** Distance recorded for squares that cannot be reached. */
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /** Contribution of a square to territory when one side can reach it
+     *  first. */
+    private static final int UNIT = 10;
+    /** Contribution of a square to the territory of the side to move
+     *  when both sides can reach it equally soon. */
+    private static final int TIE = 2;
+
+    /** Weights of territory by queen distance, territory by king
+     *  distance, and mobility in the value of a position. */
+    private static final int QUEEN_WEIGHT = 2, KING_WEIGHT = 1,
+        MOBILITY_WEIGHT = 1;
+
+    /** Distances by queen and king moves from white and black queens. */
+    private final int[] _queenWhite = new int[BitBoard.SQUARES],
+        _queenBlack = new int[BitBoard.SQUARES],
+        _kingWhite = new int[BitBoard.SQUARES],
+        _kingBlack = new int[BitBoard.SQUARES];
+
+    /** Scratch space for queen locations. */
+    private final int[] _queens = new int[BitBoard.SQUARES];
+}
@@ -37,9 +37,15 @@ class TextPlayer extends Player {
                     +
                     "(auto\\s+(([wW][hH][iI][tT][eE])|"
                     +
-                    "([bB][lL][aA][cC][kK])$))|"
+                    "([bB][lL][aA][cC][kK]))(\\s+(ai|mcts))?$)|"
+                    +
+                    "seed\\s+(\\d+)$|hash\\s+(\\d+)$|(stats)|time\\s+(\\d+)$|"
+                    +
+                    "threads\\s+(\\d+)$|eval\\s+(mobility|territory)$|"
+                    +
+                    "playouts\\s+(\\d+)$|ponder\\s+(on|off)$|"
                     +
-                    "seed\\s+(\\d+)$|[a-j]\\d+-[a-j]\\d+\\([a-j]\\d+\\)|"
+                    Square.SQ + "-" + Square.SQ + "\\(" + Square.SQ + "\\)|"
                     +
                     "(#.*)")) {
                 return line;
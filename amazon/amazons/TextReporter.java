@@ -6,6 +6,17 @@ package amazons;
  */
 class TextReporter implements Reporter {
 
+    /** A TextReporter that reports moves, notes, and errors. */
+    TextReporter() {
+        this(true);
+    }
+
+    /** A TextReporter that reports errors, and moves and notes iff
+     *  VERBOSE. */
+    TextReporter(boolean verbose) {
+        _verbose = verbose;
+    }
+
     @Override
     public void reportError(String fmt, Object... args) {
         System.err.printf(fmt, args);
@@ -14,12 +25,20 @@ class TextReporter implements Reporter {
 
     @Override
     public void reportNote(String fmt, Object... args) {
+        if (!_verbose) {
+            return;
+        }
         System.out.printf("* " + fmt, args);
         System.out.println();
     }
 
     @Override
     public void reportMove(Move move) {
-        System.out.printf("* %s%n", move);
+        if (_verbose) {
+            System.out.printf("* %s%n", move);
+        }
     }
+
+    /** True iff I report moves and notes. */
+    private final boolean _verbose;
 }
@@ -0,0 +1,266 @@
+package amazons;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static amazons.Piece.*;
+
+/** Plays many games between automated players without a user, several
+ *  at once, and records them.  Usage:
+ *
+ *      java amazons.Tournament [--games=N] [--threads=T] [--seed=S]
+ *                              [--random=R] [--size=B] [--out=FILE]
+ *                              [COMMAND...]
+ *
+ *  plays N games (default 100), T at a time (default, the number of
+ *  processors), writing a record of each to FILE (default, the standard
+ *  output) and a summary to the standard output.  Each game has its own
+ *  Controller, with a NullView and a TextReporter that reports only
+ *  errors.  Before game K (from 0) starts, its controller executes the
+ *  commands "seed S+K", "auto white", and "auto black", then the
+ *  COMMANDs (for example, "time 100", "eval territory", "auto black
+ *  mcts", or opening moves), and then R (default 2) random legal moves
+ *  chosen with seed S+K.  Since the alpha-beta players are
+ *  deterministic, these moves are what makes games with different
+ *  seeds differ.  The games are played on a BxB board (default
+ *  10x10).
+ *
+ *  Each record resembles a game in PGN: a few tag lines (including the
+ *  random moves, as "Opening"), then the moves,
+ *  numbered, each followed by the milliseconds the player took to choose
+ *  it in braces, and the result ("1-0" if white won, "0-1" if black
+ *  did).
+ *  @author Kelley
+ */
+public class Tournament {
+
+    /** Default number of games. */
+    static final int DEFAULT_GAMES = 100;
+
+    /** Default seed for the first game. */
+    static final long DEFAULT_SEED = 1;
+
+    /** Default number of random moves at the start of each game. */
+    static final int DEFAULT_RANDOM_PLIES = 2;
+
+    /** Run a tournament as described in the class comment, using
+     *  ARGS. */
+    public static void main(String... args) {
+        int games = DEFAULT_GAMES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = DEFAULT_SEED;
+        int randomPlies = DEFAULT_RANDOM_PLIES;
+        String outName = null;
+        List<String> setup = new ArrayList<>();
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--games=")) {
+                    games = Integer.parseInt(value(arg));
+                } else if (arg.startsWith("--threads=")) {
+                    threads = Integer.parseInt(value(arg));
+                } else if (arg.startsWith("--seed=")) {
+                    seed = Long.parseLong(value(arg));
+                } else if (arg.startsWith("--random=")) {
+                    randomPlies = Integer.parseInt(value(arg));
+                } else if (arg.startsWith("--size=")) {
+                    Main.setSize(value(arg));
+                } else if (arg.startsWith("--out=")) {
+                    outName = value(arg);
+                } else if (arg.startsWith("--")) {
+                    usage();
+                } else {
+                    setup.add(arg);
+                }
+            }
+        } catch (NumberFormatException excp) {
+            usage();
+        }
+        if (games <= 0 || threads <= 0 || randomPlies < 0) {
+            usage();
+        }
+        Tournament tournament = new Tournament(seed, randomPlies, setup);
+        try (PrintStream out = outName == null ? null
+             : new PrintStream(outName)) {
+            tournament.play(games, threads,
+                            out == null ? System.out : out);
+        } catch (FileNotFoundException excp) {
+            System.err.printf("Could not open %s%n", outName);
+            System.exit(1);
+        } catch (IllegalArgumentException | IllegalStateException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+        tournament.printSummary(System.out);
+    }
+
+    /** Return the part of ARG, an option of the form --NAME=VALUE, after
+     *  the "=". */
+    private static String value(String arg) {
+        return arg.substring(arg.indexOf('=') + 1);
+    }
+
+    /** Print a usage message and exit. */
+    private static void usage() {
+        System.err.println("Usage: java amazons.Tournament [--games=N]"
+                           + " [--threads=T] [--seed=S] [--random=R]"
+                           + " [--size=B] [--out=FILE] [COMMAND...]");
+        System.exit(1);
+    }
+
+    /** A tournament whose first game has seed SEED, and whose games'
+     *  controllers execute the commands SETUP and then make RANDOMPLIES
+     *  random moves before they start. */
+    Tournament(long seed, int randomPlies, List<String> setup) {
+        _seed = seed;
+        _randomPlies = randomPlies;
+        _setup = new ArrayList<>(setup);
+    }
+
+    /** Play GAMES games, THREADS at a time, writing the record of each
+     *  to OUT as it ends.  Throws an IllegalStateException if a game
+     *  cannot be played (for example, because a setup command is
+     *  invalid). */
+    void play(int games, int threads, PrintStream out) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        List<Future<Piece>> results = new ArrayList<>();
+        for (int k = 0; k < games; k += 1) {
+            int game = k;
+            results.add(pool.submit(() -> playGame(game, out)));
+        }
+        try {
+            for (Future<Piece> result : results) {
+                if (result.get() == WHITE) {
+                    _whiteWins += 1;
+                } else {
+                    _blackWins += 1;
+                }
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted");
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException(excp.getCause().getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+        _games += games;
+        _threads = threads;
+        _nanos += System.nanoTime() - start;
+    }
+
+    /** Print a summary of the games played so far on OUT. */
+    void printSummary(PrintStream out) {
+        double minutes = _nanos / NANOS_PER_MINUTE;
+        out.printf("%d games on %d threads in %.1f s: white won %d, black "
+                   + "won %d; %.1f plies per game; %.1f games/minute%n",
+                   _games, _threads, minutes * SECONDS_PER_MINUTE,
+                   _whiteWins, _blackWins,
+                   _games == 0 ? 0.0 : (double) _plies / _games,
+                   minutes == 0 ? 0.0 : _games / minutes);
+    }
+
+    /** Return the number of games won by white so far. */
+    int whiteWins() {
+        return _whiteWins;
+    }
+
+    /** Return the number of games won by black so far. */
+    int blackWins() {
+        return _blackWins;
+    }
+
+    /** Play game number GAME, write its record to OUT, and return the
+     *  winner. */
+    private Piece playGame(int game, PrintStream out) {
+        Controller control =
+            new Controller(new NullView(), null, new TextReporter(false),
+                           new TextPlayer(), new AI());
+        control.executeCommand("seed " + (_seed + game));
+        control.executeCommand("auto white");
+        control.executeCommand("auto black");
+        for (String command : _setup) {
+            control.executeCommand(command);
+        }
+        List<String> opening = new ArrayList<>();
+        Random random = new Random(_seed + game);
+        Board board = control.board();
+        for (int k = 0; k < _randomPlies; k += 1) {
+            int[] legal = new int[board.moveLimit(board.turn())];
+            int n = board.legalMoves(board.turn(), legal);
+            if (n == 0) {
+                break;
+            }
+            String move = Move.toString(legal[random.nextInt(n)]);
+            control.executeCommand(move);
+            opening.add(move);
+        }
+        StringBuilder moves = new StringBuilder();
+        StringBuilder line = new StringBuilder();
+        int first = control.board().numMoves();
+        Piece winner = control.playGame((move, nanos) -> {
+            int ply = control.board().numMoves() - 1;
+            String text = String.format("%s%s {%d}",
+                                        ply % 2 == 0
+                                        ? (ply / 2 + 1) + ". " : "",
+                                        move,
+                                        Math.round(nanos / NANOS_PER_MS));
+            if (line.length() > 0
+                && line.length() + 1 + text.length() > LINE_WIDTH) {
+                moves.append(line).append('\n');
+                line.setLength(0);
+            }
+            line.append(line.length() > 0 ? " " : "").append(text);
+        });
+        int plies = control.board().numMoves() - first;
+        String result = winner == WHITE ? "1-0" : "0-1";
+        line.append(line.length() > 0 ? " " : "").append(result);
+        moves.append(line).append('\n');
+        synchronized (out) {
+            out.printf("[Game \"%d\"]%n[Seed \"%d\"]%n[Setup \"%s\"]%n"
+                       + "[Opening \"%s\"]%n[Plies \"%d\"]%n"
+                       + "[Result \"%s\"]%n%n%s%n",
+                       game, _seed + game, String.join("; ", _setup),
+                       String.join(" ", opening), plies, result, moves);
+            out.flush();
+        }
+        synchronized (this) {
+            _plies += plies;
+        }
+        return winner;
+    }
+
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MS = 1e6;
+
+    /** Nanoseconds per minute. */
+    private static final double NANOS_PER_MINUTE = 6e10;
+
+    /** Seconds per minute. */
+    private static final int SECONDS_PER_MINUTE = 60;
+
+    /** Maximum length of a line of moves in a record. */
+    private static final int LINE_WIDTH = 79;
+
+    /** Seed of the first game. */
+    private final long _seed;
+    /** Commands executed before each game. */
+    private final List<String> _setup;
+    /** Number of random moves made before each game. */
+    private final int _randomPlies;
+    /** Numbers of games played and won by each side. */
+    private int _games, _whiteWins, _blackWins;
+    /** Total number of plies in the games played. */
+    private long _plies;
+    /** Number of threads used by the last call to play. */
+    private int _threads;
+    /** Total time spent playing, in nanoseconds. */
+    private long _nanos;
+}
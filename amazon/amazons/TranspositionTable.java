@@ -0,0 +1,192 @@
+package amazons;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** A fixed-size table of search results keyed by position hash keys (see
+ *  Board.hashKey).  Each entry records the depth to which a position was
+ *  searched, its score, whether that score is exact or only a lower or
+ *  upper bound, and the best move found (packed as for Move.pack).
+ *  The number of entries is a power of two chosen to fit a given
+ *  memory budget, and a position's entry is selected by the low bits of
+ *  its key.  When two positions compete for an entry, the one searched
+ *  more deeply is kept, unless the other entry is left over from an
+ *  earlier search.
+ *
+ *  Entries are held in two parallel arrays of longs, one holding the
+ *  packed entry and the other the key XORed with the packed entry, so
+ *  that an entry whose two halves were written by different stores is
+ *  simply seen as a miss.
+ *  @author Kelley
+ */
+class TranspositionTable {
+
+    /** Bound type: the stored score is exact. */
+    static final int EXACT = 1;
+    /** Bound type: the stored score is a lower bound. */
+    static final int LOWER = 2;
+    /** Bound type: the stored score is an upper bound. */
+    static final int UPPER = 3;
+
+    /** The number of bytes of memory used by each entry. */
+    static final int ENTRY_BYTES = 2 * Long.BYTES;
+
+    /** The greatest depth that may be recorded in an entry. */
+    static final int MAX_DEPTH = (1 << 6) - 1;
+
+    /** A table using at most BYTES bytes of memory (and at least one
+     *  entry). */
+    TranspositionTable(long bytes) {
+        long entries = Long.highestOneBit(Math.max(1, bytes / ENTRY_BYTES));
+        entries = Math.min(entries, Integer.highestOneBit(Integer.MAX_VALUE));
+        _checks = new long[(int) entries];
+        _entries = new long[(int) entries];
+        _mask = (int) entries - 1;
+    }
+
+    /** Return the number of entries in this table. */
+    int size() {
+        return _entries.length;
+    }
+
+    /** Return the number of bytes of memory used by my entries. */
+    long bytes() {
+        return (long) size() * ENTRY_BYTES;
+    }
+
+    /** Remove all entries and reset all statistics. */
+    void clear() {
+        for (int i = 0; i < _entries.length; i += 1) {
+            _checks[i] = _entries[i] = 0;
+        }
+        _age = 0;
+        _probes.reset();
+        _hits.reset();
+        _cutoffs.reset();
+        _stores.reset();
+        _overwrites.reset();
+    }
+
+    /** Mark the start of a new search, so that entries from previous
+     *  searches are replaced in preference to those from this one. */
+    void newSearch() {
+        _age = (_age + 1) & AGE_MASK;
+    }
+
+    /** Return the entry for the position with hash key KEY, or 0 if
+     *  there is none.  Use score, move, depth, and bound to extract its
+     *  fields. */
+    long probe(long key) {
+        _probes.increment();
+        int i = (int) key & _mask;
+        long entry = _entries[i];
+        if (entry != 0 && (_checks[i] ^ entry) == key) {
+            _hits.increment();
+            return entry;
+        }
+        return 0;
+    }
+
+    /** Record that the position with key KEY was searched to depth DEPTH,
+     *  giving SCORE, which is a bound of type BOUND (EXACT, LOWER, or
+     *  UPPER), with best move MOVE (packed, or 0 if none). */
+    void store(long key, int depth, int bound, int score, int move) {
+        int i = (int) key & _mask;
+        long old = _entries[i];
+        boolean sameKey = (_checks[i] ^ old) == key;
+        if (old != 0 && !sameKey && age(old) == _age
+            && depth(old) > depth) {
+            return;
+        }
+        if (old != 0 && !sameKey) {
+            _overwrites.increment();
+        }
+        _stores.increment();
+        long entry = (score & SCORE_MASK)
+            | ((long) move << MOVE_SHIFT)
+            | ((long) Math.min(depth, MAX_DEPTH) << DEPTH_SHIFT)
+            | ((long) bound << BOUND_SHIFT)
+            | ((long) _age << AGE_SHIFT);
+        _entries[i] = entry;
+        _checks[i] = key ^ entry;
+    }
+
+    /** Record that a probe of this table allowed a search to stop without
+     *  searching any moves. */
+    void recordCutoff() {
+        _cutoffs.increment();
+    }
+
+    /** Return the score recorded in ENTRY. */
+    static int score(long entry) {
+        return (int) entry;
+    }
+
+    /** Return the best move (packed) recorded in ENTRY, or 0 if none. */
+    static int move(long entry) {
+        return (int) (entry >>> MOVE_SHIFT) & MOVE_MASK;
+    }
+
+    /** Return the search depth recorded in ENTRY. */
+    static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & MAX_DEPTH;
+    }
+
+    /** Return the bound type (EXACT, LOWER, or UPPER) recorded in
+     *  ENTRY. */
+    static int bound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    /** Return the search age recorded in ENTRY. */
+    private static int age(long entry) {
+        return (int) (entry >>> AGE_SHIFT) & AGE_MASK;
+    }
+
+    @Override
+    public String toString() {
+        long probes = _probes.sum();
+        return String.format("transposition table: %d entries (%d KB), "
+                             + "%d probes, %.1f%% hits, %d cutoffs, "
+                             + "%d stores, %d overwrites",
+                             size(), bytes() / BYTES_PER_KB, probes,
+                             probes == 0 ? 0.0 : 100.0 * _hits.sum() / probes,
+                             _cutoffs.sum(), _stores.sum(),
+                             _overwrites.sum());
+    }
+
+    /** Layout of a packed entry: the score in the low 32 bits, then the
+     *  move, depth, bound type, and age. */
+    private static final int
+        MOVE_SHIFT = Integer.SIZE,
+        DEPTH_SHIFT = MOVE_SHIFT + 21,
+        BOUND_SHIFT = DEPTH_SHIFT + 6,
+        AGE_SHIFT = BOUND_SHIFT + 2;
+
+    /** Masks for the fields of a packed entry. */
+    private static final int
+        MOVE_MASK = (1 << (DEPTH_SHIFT - MOVE_SHIFT)) - 1,
+        BOUND_MASK = (1 << (AGE_SHIFT - BOUND_SHIFT)) - 1,
+        AGE_MASK = (1 << (Long.SIZE - AGE_SHIFT - 1)) - 1;
+
+    /** Mask for the score field of a packed entry. */
+    private static final long SCORE_MASK = 0xffffffffL;
+
+    /** Bytes in a kilobyte. */
+    private static final int BYTES_PER_KB = 1024;
+
+    /** Keys XORed with the corresponding entries of _entries. */
+    private final long[] _checks;
+    /** The packed entries. */
+    private final long[] _entries;
+    /** Mask selecting the entry index from a key. */
+    private final int _mask;
+    /** Age of the current search. */
+    private int _age;
+    /** Statistics: the number of probes, probes that found an entry,
+     *  probes that ended a search, stores, and stores that replaced
+     *  another position's entry.  Searchers on several threads share a
+     *  table, so these are LongAdders. */
+    private final LongAdder _probes = new LongAdder(),
+        _hits = new LongAdder(), _cutoffs = new LongAdder(),
+        _stores = new LongAdder(), _overwrites = new LongAdder();
+}
@@ -2,6 +2,24 @@ package amazons;
 
 import org.junit.Test;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
 import static amazons.Piece.*;
 import static amazons.Piece.WHITE;
 import static org.junit.Assert.*;
@@ -156,6 +174,671 @@ public class UnitTest {
 
     }
 
+    /** Checks that incrementally maintained hash keys match keys computed
+     *  from scratch along random games, after undoing, and in copies. */
+    @Test
+    public void testHashKey() {
+        Random rand = new Random(61);
+        Board b = new Board();
+        long initKey = b.hashKey();
+        assertEquals(b.computeHashKey(), initKey);
+        int[] moves = new int[b.moveLimit(WHITE)];
+        for (int game = 0; game < 5; game += 1) {
+            b.init();
+            assertEquals(initKey, b.hashKey());
+            while (true) {
+                int n = b.legalMoves(b.turn(), moves);
+                if (n == 0) {
+                    break;
+                }
+                b.makeMove(moves[rand.nextInt(n)]);
+                assertEquals(b.computeHashKey(), b.hashKey());
+                Board copy = new Board(b);
+                assertEquals(b.hashKey(), copy.hashKey());
+            }
+            while (b.numMoves() > 0) {
+                b.undo();
+                assertEquals(b.computeHashKey(), b.hashKey());
+            }
+            assertEquals(initKey, b.hashKey());
+        }
+    }
+
+    /** Checks that the same position reached by different orders of
+     *  moves has the same key. */
+    @Test
+    public void testHashKeyTransposition() {
+        Board b1 = new Board(), b2 = new Board();
+        b1.makeMove(Move.mv("d1-d2(d3)"));
+        b1.makeMove(Move.mv("d10-d9(d8)"));
+        b1.makeMove(Move.mv("g1-g2(g3)"));
+        b2.makeMove(Move.mv("g1-g2(g3)"));
+        b2.makeMove(Move.mv("d10-d9(d8)"));
+        b2.makeMove(Move.mv("d1-d2(d3)"));
+        assertEquals(b1.toString(), b2.toString());
+        assertEquals(b1.hashKey(), b2.hashKey());
+        b1.undo();
+        assertNotEquals(b1.hashKey(), b2.hashKey());
+        b2.put(EMPTY, Square.sq("g2"));
+        assertEquals(b2.computeHashKey(), b2.hashKey());
+    }
+
+    /** Checks that searching with and without move ordering, and with
+     *  moves generated all at once or in two stages, gives the same
+     *  values. */
+    @Test
+    public void testSearchVariants() {
+        for (int seed = 0; seed < 4; seed += 1) {
+            Board b = Bench.position(10 + 10 * seed, seed);
+            int sense = b.turn() == WHITE ? 1 : -1;
+            Integer expected = null;
+            for (int k = 0; k < 4; k += 1) {
+                Searcher searcher =
+                    new Searcher(new TranspositionTable(1 << 20),
+                                 new MobilityEvaluator());
+                searcher.setOrdering(k % 2 == 0);
+                searcher.setSplit(k / 2 == 0);
+                searcher.board().copy(b);
+                searcher.start(Long.MAX_VALUE);
+                int value = searcher.findMove(2, sense, -AI.INFTY,
+                                              AI.INFTY);
+                if (expected == null) {
+                    expected = value;
+                }
+                assertEquals((int) expected, value);
+            }
+        }
+    }
+
+    /** Checks that a transposition table counts every probe and store
+     *  when several threads share it. */
+    @Test
+    public void testTableStatistics() throws Exception {
+        TranspositionTable table = new TranspositionTable(1 << 16);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < 4; t += 1) {
+            long base = (long) t << 40;
+            results.add(executor.submit(() -> {
+                for (int k = 1; k <= 100000; k += 1) {
+                    table.store(base + k, 1, TranspositionTable.EXACT, 0, 0);
+                    table.probe(base + k);
+                }
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+        String stats = table.toString();
+        assertTrue(stats, stats.contains(" 400000 probes,"));
+        assertTrue(stats, stats.contains(" 400000 stores,"));
+    }
+
+    /** Checks that the Monte Carlo player makes the requested number of
+     *  playouts and chooses legal moves, including when it keeps its
+     *  tree from move to move, with one thread and with several. */
+    @Test
+    public void testMCTSPlayer() {
+        for (int threads = 1; threads <= 4; threads += 3) {
+            MCTSPlayer player = new MCTSPlayer();
+            player.setSeed(61);
+            player.setThreads(threads);
+            Board b = Bench.position(20, 61);
+            for (int k = 0; k < 3; k += 1) {
+                int move = player.findMove(b, 500, 0);
+                assertEquals(500, player.playouts());
+                assertTrue(b.isLegal(Move.mv(move)));
+                b.makeMove(move);
+                b.makeMove(player.findMove(b, 100, 0));
+            }
+            player.setThreads(1);
+        }
+    }
+
+    /** Tests that "quit", arriving while the Monte Carlo player is
+     *  searching, is returned promptly in place of a move and stops the
+     *  search, and that the player searches with the controller's
+     *  evaluator. */
+    @Test(timeout = 60000)
+    public void testMCTSQuit() {
+        Controller control =
+            new Controller(new NullView(), null, new TextReporter(),
+                           new TextPlayer() {
+                               @Override
+                               String pollCommand() {
+                                   return "quit";
+                               }
+                           }, new MCTSPlayer());
+        control.executeCommand("playouts 2000000000");
+        MCTSPlayer player = new MCTSPlayer(WHITE, control);
+        long start = System.nanoTime();
+        assertEquals("quit", player.myMove());
+        assertTrue(System.nanoTime() - start < 2e9);
+        assertTrue(player.playouts() < 2000000000);
+        assertSame(control.evaluator(), player.evaluator());
+        player.stopThinking();
+    }
+
+    /** Checks that the AI keeps deepening its search, and finds the
+     *  win, when black can leave white without a move. */
+    @Test
+    public void testImmobilize() {
+        Board b = regionBoard("a2", "d3", "a1", "b1", "c2", "d4", "e5");
+        b.makeMove(Move.mv("a2-a1(a2)"));
+        AI ai = new AI();
+        assertEquals(Move.mv("d3-c2(b1)").packed(), ai.findMove(b, 4, 0));
+        assertTrue(ai.lastDepth() >= 2);
+    }
+
+    /** Tests that a search running on another thread stops promptly
+     *  when cancelled, and still returns a legal move once it has
+     *  completed a depth. */
+    @Test
+    public void testCancelSearch() throws Exception {
+        AI ai = new AI();
+        Board b = Bench.position(10, 61);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Integer> search = executor.submit(
+            () -> ai.findMove(b, TranspositionTable.MAX_DEPTH, 0));
+        Thread.sleep(500);
+        assertFalse(search.isDone());
+        ai.cancel();
+        int move = search.get(2, TimeUnit.SECONDS);
+        assertTrue(ai.lastDepth() >= 1);
+        assertTrue(b.isLegal(Move.mv(move)));
+        executor.shutdown();
+    }
+
+    /** Tests pondering: after its move, the AI searches the position
+     *  after the reply it predicts, uses that search if the reply is
+     *  made, and abandons it otherwise. */
+    @Test
+    public void testPonder() {
+        Controller control =
+            new Controller(new NullView(), null, new TextReporter(),
+                           new TextPlayer(), new AI());
+        control.setPonder(true);
+        AI ai = new AI(WHITE, control);
+        Board b = control.board();
+        b.copy(Bench.position(30, 61));
+        b.makeMove(Move.mv(ai.myMove()));
+        assertTrue(ai.pondering());
+        b.makeMove(ai.ponderMove());
+        b.makeMove(Move.mv(ai.myMove()));
+        assertEquals(1, ai.ponderHits());
+        assertTrue(ai.pondering());
+        int[] moves = new int[b.moveLimit(BLACK)];
+        int n = b.legalMoves(BLACK, moves);
+        b.makeMove(moves[0] == ai.ponderMove() ? moves[1] : moves[0]);
+        String move = ai.myMove();
+        assertEquals(1, ai.ponderMisses());
+        assertTrue(b.isLegal(Move.mv(move)));
+        ai.stopThinking();
+        assertFalse(ai.pondering());
+        assertTrue(n > 1);
+    }
+
+    /** Tests a small tournament of games played two at a time, checking
+     *  that games with different seeds differ and that Monte Carlo
+     *  players replay a game exactly given the same seed. */
+    @Test
+    public void testTournament() {
+        Tournament tournament =
+            new Tournament(61, 2, Arrays.asList("time 5", "hash 1"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        tournament.play(3, 2, new PrintStream(bytes));
+        assertEquals(3, tournament.whiteWins() + tournament.blackWins());
+        String records = bytes.toString();
+        assertTrue(records.contains("[Seed \"61\"]"));
+        assertTrue(records.contains("[Seed \"63\"]"));
+        assertTrue(records.contains("\n2. "));
+        List<String> games = new ArrayList<>();
+        for (String record : records.split("(?=\\[Game )")) {
+            if (!record.isEmpty()) {
+                games.add(record.substring(record.indexOf("[Opening")));
+            }
+        }
+        assertEquals(3, games.size());
+        assertEquals(3, games.stream().distinct().count());
+
+        List<String> setup =
+            Arrays.asList("auto white mcts", "auto black mcts",
+                          "playouts 100");
+        String[] replays = new String[2];
+        for (int k = 0; k < 2; k += 1) {
+            bytes.reset();
+            new Tournament(5, 0, setup).play(1, 1, new PrintStream(bytes));
+            replays[k] = bytes.toString().replaceAll(" \\{\\d+\\}", "")
+                .replaceAll("\\s+", " ");
+        }
+        assertEquals(replays[0], replays[1]);
+    }
+
+    /** Return a board filled with spears, except for a white queen on
+     *  WHITEQUEEN, a black queen on BLACKQUEEN, and the squares named in
+     *  EMPTY. */
+    private static Board regionBoard(String whiteQueen, String blackQueen,
+                                     String... empty) {
+        Board b = new Board();
+        for (int k = 0; k < Board.SIZE * Board.SIZE; k += 1) {
+            b.put(SPEAR, Square.sq(k));
+        }
+        b.put(WHITE, Square.sq(whiteQueen));
+        b.put(BLACK, Square.sq(blackQueen));
+        for (String sq : empty) {
+            b.put(EMPTY, Square.sq(sq));
+        }
+        return b;
+    }
+
+    /** Checks that Endgame decides games of separate regions by the
+     *  numbers of moves each side can make, including a region in which
+     *  a queen cannot use every empty square. */
+    @Test
+    public void testEndgame() {
+        Endgame endgame = new Endgame();
+        Board b = regionBoard("a1", "j10", "b1", "c1", "d1", "i10", "h10");
+        assertEquals(WHITE, endgame.winner(b));
+        b.makeMove(Move.mv("a1-b1(a1)"));
+        assertEquals(WHITE, endgame.winner(b));
+        b.put(EMPTY, Square.sq("g10"));
+        assertEquals(BLACK, endgame.winner(b));
+        for (int row = 2; row < Board.SIZE; row += 1) {
+            b.put(EMPTY, Square.sq("j" + row));
+        }
+        b.put(EMPTY, Square.sq("i2"));
+        assertEquals(BLACK, endgame.winner(b));
+        for (String sq : new String[] { "h1", "g1", "f1", "e1" }) {
+            b.put(EMPTY, Square.sq(sq));
+        }
+        assertNull(endgame.winner(b));
+
+        b = regionBoard("b1", "j10", "c1", "a2", "d2", "d3",
+                        "i10", "h10", "g10");
+        assertEquals(BLACK, endgame.winner(b));
+        b.put(EMPTY, Square.sq("a1"));
+        assertEquals(WHITE, endgame.winner(b));
+
+        String[] open = new String[2 * Board.SIZE + 2];
+        for (int col = 0; col < Board.SIZE; col += 1) {
+            open[2 * col] = (char) ('a' + col) + "5";
+            open[2 * col + 1] = (char) ('a' + col) + "6";
+        }
+        open[2 * Board.SIZE] = "j9";
+        open[2 * Board.SIZE + 1] = "j8";
+        b = regionBoard("a4", "j10", open);
+        assertEquals(WHITE, endgame.winner(b));
+    }
+
+    /** Checks the territory evaluator on the symmetric initial position,
+     *  where only the side to move's advantage in tied squares counts,
+     *  and after one of white's queens is walled in. */
+    @Test
+    public void testTerritoryEvaluator() {
+        Evaluator eval = new TerritoryEvaluator();
+        Board b = new Board();
+        int initial = eval.score(b);
+        assertTrue(initial > 0);
+        assertEquals(initial, eval.score(b));
+        for (String sq : new String[] { "a3", "a5", "b3", "b4", "b5" }) {
+            b.put(SPEAR, Square.sq(sq));
+        }
+        assertTrue(eval.score(b) < 0);
+    }
+
+    /** Tests the square patterns for several board sizes, and plays a
+     *  game on a 4x4 board (in a separate JVM, since the size is fixed
+     *  when Board is loaded), which the search solves from the start:
+     *  black wins. */
+    @Test
+    public void testBoardSize() throws Exception {
+        assertEquals("([a-d][1-4])", Square.squarePattern(4));
+        assertEquals("([a-j](?:[1-9]|10))", Square.squarePattern(10));
+        assertEquals("([a-k](?:[1-9]|1[0-1]))", Square.squarePattern(11));
+        assertEquals(Square.squarePattern(Board.SIZE), Square.SQ);
+        String output = runJava("auto white\nauto black\n",
+                                "amazons.Main", "--size=4");
+        assertTrue(output, output.contains("* Black wins."));
+        for (String first : new String[] { "Square", "BitBoard", "Move" }) {
+            output = runJava("", LoadOrder.class.getName(), first, "Board");
+            assertEquals(first, "d1-d2(d3)\n", output);
+        }
+    }
+
+    /** Run the class named MAIN with arguments ARGS in a new JVM with my
+     *  class path, giving it INPUT as its standard input, and return its
+     *  standard output and error. */
+    private static String runJava(String input, String main, String... args)
+        throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java")
+                    .getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(main);
+        command.addAll(Arrays.asList(args));
+        Process child = new ProcessBuilder(command)
+            .redirectErrorStream(true).start();
+        try (PrintStream in = new PrintStream(child.getOutputStream())) {
+            in.print(input);
+        }
+        String output;
+        try (BufferedReader out = new BufferedReader(
+                 new InputStreamReader(child.getInputStream()))) {
+            StringBuilder text = new StringBuilder();
+            for (String line = out.readLine(); line != null;
+                 line = out.readLine()) {
+                text.append(line).append('\n');
+            }
+            output = text.toString();
+        }
+        assertTrue(child.waitFor(1, TimeUnit.MINUTES));
+        return output;
+    }
+
+    /** Loads the classes of this package named by its arguments, in
+     *  order, then makes and prints a move, so that testBoardSize can
+     *  check that the board's tables do not depend on which class is
+     *  loaded first. */
+    static class LoadOrder {
+        /** Load the classes named by NAMES, then make a move. */
+        public static void main(String... names) throws Exception {
+            for (String name : names) {
+                Class.forName("amazons." + name);
+            }
+            Board b = new Board();
+            b.makeMove(Move.mv("d1-d2(d3)"));
+            System.out.println(Move.mv(b.move(0)));
+        }
+    }
+
+    /** Tests move generation against the known numbers of positions
+     *  one and two moves from the start. */
+    @Test
+    public void testPerft() {
+        Board b = new Board();
+        assertEquals(2176, Bench.perft(b, 1));
+        assertEquals(4307152, Bench.perft(b, 2));
+        assertEquals(0, b.numMoves());
+    }
+
+    /** Tests that Moves are unique, even when created by several threads
+     *  at once, and agree with their packed forms. */
+    @Test
+    public void testMoveIntern() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Move[]>> results = new ArrayList<>();
+        for (int k = 0; k < 4; k += 1) {
+            results.add(executor.submit(() -> {
+                Move[] moves = new Move[Board.SIZE * Board.SIZE];
+                for (int i = 0; i < moves.length; i += 1) {
+                    Square from = Square.sq(i), to = null;
+                    for (int dir = i % 8; to == null; dir = (dir + 1) % 8) {
+                        to = from.queenMove(dir, 1);
+                    }
+                    moves[i] = Move.mv(from, to, from);
+                }
+                return moves;
+            }));
+        }
+        Move[] first;
+        try {
+            first = results.get(0).get();
+            for (Future<Move[]> result : results) {
+                assertArrayEquals(first, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for (Move move : first) {
+            int packed = move.packed();
+            assertSame(move, Move.mv(packed));
+            assertEquals(move.toString(), Move.toString(packed));
+            assertEquals(move.from(), move.spear());
+        }
+        Move odd = Move.mv(0);
+        assertSame(odd, Move.mv(Square.sq(0), Square.sq(0), Square.sq(0)));
+        assertEquals("a1-a1(a1)", odd.toString());
+    }
+
+    /** Tests that copies of a Board share no state with it or with each
+     *  other: several threads at once copy the same board and play and
+     *  undo random games on their copies, and neither the original nor
+     *  the copies' histories change. */
+    @Test
+    public void testCopyIsolation() throws Exception {
+        Board b = new Board();
+        b.makeMove(Move.mv("d1-d2(d3)"));
+        b.makeMove(Move.mv("d10-d9(d8)"));
+        String contents = b.toString();
+        long key = b.hashKey();
+        List<Move> history = new ArrayList<>(b.movesStack());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int k = 0; k < 8; k += 1) {
+            Random random = new Random(k);
+            results.add(executor.submit(() -> {
+                int plies = 0;
+                for (int game = 0; game < 20; game += 1) {
+                    Board copy = new Board(b);
+                    int[] moves = new int[copy.moveLimit(copy.turn())];
+                    while (true) {
+                        int n = copy.legalMoves(copy.turn(), moves);
+                        if (n == 0) {
+                            break;
+                        }
+                        copy.makeMove(moves[random.nextInt(n)]);
+                        moves = new int[copy.moveLimit(copy.turn())];
+                        plies += 1;
+                    }
+                    Board again = new Board(copy);
+                    while (copy.numMoves() > 2) {
+                        copy.undo();
+                    }
+                    assertEquals(contents, copy.toString());
+                    assertEquals(key, copy.hashKey());
+                    assertEquals(history, copy.movesStack());
+                    assertEquals(again.computeHashKey(), again.hashKey());
+                    assertEquals(again.numMoves(), again.movesStack().size());
+                }
+                return plies;
+            }));
+        }
+        try {
+            for (Future<Integer> result : results) {
+                assertTrue(result.get() > 0);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(contents, b.toString());
+        assertEquals(key, b.hashKey());
+        assertEquals(history, b.movesStack());
+        b.movesStack().clear();
+        assertEquals(2, b.numMoves());
+        assertEquals(b.move(1), Move.mv("d10-d9(d8)").packed());
+    }
+
+    /** Tests that Move.parse accepts exactly the strings that
+     *  MOVE_PATTERN matches, and finds the same squares, on hand-picked
+     *  strings and on random strings made of likely characters. */
+    @Test
+    public void testParse() {
+        String[] strings = {
+            "a1-b2(c3)", "j10-a10(a1)", "d1 d7 i7", "d1\td7 \n i7",
+            "a10 a9 a10", "a1-b2(c3) ", " a1-b2(c3)", "a1-b2(c3",
+            "a1-b2c3)", "a1 b2(c3)", "a1-b2 c3", "k1-b2(c3)", "a0-b2(c3)",
+            "a11-b2(c3)", "a1-b2(c3))", "a1b2c3", "A1-b2(c3)", "", "a",
+            "a1 b2", "a1  b2  c10",
+        };
+        Random random = new Random(61);
+        String chars = "aj0129-() \tk";
+        for (int k = 0; k < 100000 + strings.length; k += 1) {
+            String str;
+            if (k < strings.length) {
+                str = strings[k];
+            } else {
+                StringBuilder build = new StringBuilder();
+                for (int n = random.nextInt(14); n > 0; n -= 1) {
+                    build.append(chars.charAt(random.nextInt(chars.length())));
+                }
+                str = build.toString();
+            }
+            Matcher mat = Move.MOVE_PATTERN.matcher(str);
+            int move = Move.parse(str);
+            assertEquals(str, mat.matches(), move != Move.NOT_A_MOVE);
+            if (mat.matches()) {
+                int g = mat.group(1) != null ? 1 : 4;
+                assertEquals(str, Square.sq(mat.group(g)).index(),
+                             Move.fromIndex(move));
+                assertEquals(str, Square.sq(mat.group(g + 1)).index(),
+                             Move.toIndex(move));
+                assertEquals(str, Square.sq(mat.group(g + 2)).index(),
+                             Move.spearIndex(move));
+            }
+        }
+        assertNull(Move.mv("a1-b3(c3)"));
+        assertSame(Move.mv("j10-a10(a1)"), Move.mv("j10 a10 a1"));
+    }
+
+    /** Tests building an opening book from a log and looking up its
+     *  moves. */
+    @Test
+    public void testOpeningBook() throws IOException {
+        String log = "seed 61\na4-a5(a6)\nd10-d9(d8)\nnew\ng1 g2 g3\n"
+            + "new\ng1-g2(g3) # again\nquit\n";
+        BookBuilder builder = new BookBuilder(1);
+        builder.add(new BufferedReader(new StringReader(log)));
+        File file = File.createTempFile("amazons", ".book");
+        file.deleteOnExit();
+        builder.write(file.getPath());
+        assertEquals(3, builder.games());
+
+        OpeningBook book = OpeningBook.open(file.getPath());
+        Board b = new Board();
+        Move best = Move.mv("g1-g2(g3)"), other = Move.mv("a4-a5(a6)");
+        assertEquals(2, book.size());
+        assertEquals(1, book.plies());
+        assertEquals(3, book.weight(b.hashKey()));
+        assertEquals(best.packed(), book.bestMove(b.hashKey()));
+        assertEquals(best.packed(), book.move(b.hashKey(), 1));
+        assertEquals(other.packed(), book.move(b.hashKey(), 2));
+        b.makeMove(other);
+        assertEquals(0, book.weight(b.hashKey()));
+        assertEquals(0, book.bestMove(b.hashKey()));
+    }
+
+    /** Checks which entries a SolveCache keeps when several keys share
+     *  the same slots. */
+    @Test
+    public void testSolveCache() throws IOException {
+        File file = File.createTempFile("amazons", ".cache");
+        file.deleteOnExit();
+        file.delete();
+        long[] keys = new long[6];
+        for (int k = 0; k < keys.length; k += 1) {
+            keys[k] = (5L << 32) | ((k + 1L) << 8);
+        }
+        try (SolveCache cache = SolveCache.open(file.getPath(), 1024)) {
+            assertEquals(128, cache.slots());
+            cache.store(keys[0], true, 1 << 20);
+            cache.store(keys[1], false, 3);
+            cache.store(keys[2], true, 8);
+            cache.store(keys[3], false, 16);
+            assertEquals(SolveCache.WIN, cache.lookup(keys[0]));
+            assertEquals(SolveCache.LOSS, cache.lookup(keys[1]));
+            assertEquals(SolveCache.WIN, cache.lookup(keys[2]));
+            assertEquals(SolveCache.LOSS, cache.lookup(keys[3]));
+            assertEquals(4, cache.used());
+            cache.store(keys[4], true, 1);
+            assertEquals(SolveCache.UNKNOWN, cache.lookup(keys[4]));
+            cache.store(keys[5], true, 1 << 10);
+            assertEquals(SolveCache.WIN, cache.lookup(keys[5]));
+            assertEquals(SolveCache.UNKNOWN, cache.lookup(keys[1]));
+            cache.store(keys[0], false, 1);
+            assertEquals(SolveCache.LOSS, cache.lookup(keys[0]));
+        }
+    }
+
+    /** Checks the Solver, and the winning moves it reports, against a
+     *  plain search of every move, on random positions in a small corner
+     *  of the board, and checks that solving them again after reopening
+     *  its cache file takes less search. */
+    @Test
+    public void testSolver() throws IOException {
+        File file = File.createTempFile("amazons", ".cache");
+        file.deleteOnExit();
+        file.delete();
+        Random random = new Random(25);
+        List<Board> boards = new ArrayList<>();
+        List<Piece> winners = new ArrayList<>();
+        long searched;
+        try (SolveCache cache = SolveCache.open(file.getPath(), 1 << 16);
+             Solver solver = new Solver(cache, 2)) {
+            for (int k = 0; k < 20; k += 1) {
+                List<String> corner = new ArrayList<>();
+                for (int col = 0; col < 4; col += 1) {
+                    for (int row = 1; row <= 3; row += 1) {
+                        corner.add((char) ('a' + col) + "" + row);
+                    }
+                }
+                Collections.shuffle(corner, random);
+                Board b = regionBoard(corner.get(0), corner.get(1),
+                                      corner.subList(2, 9)
+                                      .toArray(new String[0]));
+                boolean wins = bruteWins(b);
+                Piece winner = solver.solve(b);
+                assertEquals(wins ? b.turn() : b.turn().opponent(), winner);
+                checkBestMove(b, wins, solver.bestMove());
+                boards.add(b);
+                winners.add(winner);
+            }
+            searched = solver.nodes();
+        }
+        try (SolveCache cache = SolveCache.open(file.getPath(), 0);
+             Solver solver = new Solver(cache, 1)) {
+            assertEquals(1 << 13, cache.slots());
+            for (int k = 0; k < boards.size(); k += 1) {
+                Board b = boards.get(k);
+                assertEquals(winners.get(k), solver.solve(b));
+                checkBestMove(b, winners.get(k) == b.turn(),
+                              solver.bestMove());
+            }
+            assertTrue(solver.nodes() < searched);
+        }
+    }
+
+    /** Check that MOVE (packed), reported by a Solver for B, is a
+     *  winning move if WINS, and 0 otherwise. */
+    private static void checkBestMove(Board b, boolean wins, int move) {
+        if (!wins) {
+            assertEquals(0, move);
+            return;
+        }
+        assertNotEquals(0, move);
+        assertTrue(b.isLegal(Move.mv(move)));
+        b.makeMove(move);
+        assertFalse(bruteWins(b));
+        b.undo();
+    }
+
+    /** Return true iff the side to move on B wins, found by trying
+     *  every move. */
+    private static boolean bruteWins(Board b) {
+        int[] moves = new int[b.moveLimit(b.turn())];
+        int n = b.legalMoves(b.turn(), moves);
+        for (int k = 0; k < n; k += 1) {
+            b.makeMove(moves[k]);
+            boolean lost = !bruteWins(b);
+            b.undo();
+            if (lost) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Test
     public void testIsLegalMakeMove() {
         Board testBoard = new Board();